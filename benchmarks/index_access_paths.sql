@@ -0,0 +1,96 @@
+-- Задержка запросов к lemma и index_table в зависимости от размера таблиц
+-- без индексов из 20250725120000_added_lemma_index_indexes.xml и с ними.
+--
+-- Запуск: psql -U AraSimon -d search_engine -f benchmarks/index_access_paths.sql
+-- Данные создаются в схеме bench, таблицы приложения не затрагиваются.
+
+CREATE SCHEMA IF NOT EXISTS bench;
+
+CREATE TABLE IF NOT EXISTS bench.result
+(
+    pages      INT,
+    index_rows BIGINT,
+    query      TEXT,
+    indexed    BOOLEAN,
+    avg_ms     NUMERIC
+);
+TRUNCATE bench.result;
+
+-- Запросы повторяются со случайными параметрами, в результат пишется среднее время одного выполнения
+CREATE OR REPLACE FUNCTION bench.measure(pages INT, lemmas INT, indexed BOOLEAN, repeats INT) RETURNS VOID AS
+$$
+DECLARE
+    queries TEXT[] := ARRAY [
+        'SELECT id FROM bench.lemma WHERE site_id = 1 AND lemma = ''лемма'' || $1',
+        'SELECT page_id, ranking FROM bench.index_table WHERE lemma_id = $1 ORDER BY page_id',
+        'SELECT id, lemma_id, ranking FROM bench.index_table WHERE page_id = $2',
+        'SELECT ranking FROM bench.index_table WHERE lemma_id = $1 AND page_id = $2'];
+    table_rows BIGINT;
+    started    TIMESTAMPTZ;
+    total      INTERVAL;
+    q          TEXT;
+BEGIN
+    SELECT COUNT(*) INTO table_rows FROM bench.index_table;
+    FOREACH q IN ARRAY queries
+        LOOP
+            total := INTERVAL '0';
+            FOR i IN 1..repeats
+                LOOP
+                    started := clock_timestamp();
+                    EXECUTE 'SELECT COUNT(*) FROM (' || q || ') r'
+                        USING 1 + floor(random() * lemmas)::INT, 1 + floor(random() * pages)::INT;
+                    total := total + (clock_timestamp() - started);
+                END LOOP;
+            INSERT INTO bench.result
+            VALUES (pages, table_rows, q, indexed, round(extract(EPOCH FROM total) * 1000 / repeats, 3));
+        END LOOP;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE OR REPLACE FUNCTION bench.run(pages INT, lemmas INT, lemmas_per_page INT, repeats INT) RETURNS VOID AS
+$$
+BEGIN
+    DROP TABLE IF EXISTS bench.index_table, bench.lemma;
+    CREATE TABLE bench.lemma
+    (
+        id        SERIAL PRIMARY KEY,
+        site_id   INT          NOT NULL,
+        lemma     VARCHAR(255) NOT NULL,
+        frequency INT          NOT NULL
+    );
+    CREATE TABLE bench.index_table
+    (
+        id       SERIAL PRIMARY KEY,
+        page_id  INT   NOT NULL,
+        lemma_id INT   NOT NULL,
+        ranking  FLOAT NOT NULL
+    );
+    INSERT INTO bench.lemma (site_id, lemma, frequency)
+    SELECT 1, 'лемма' || g, 0 FROM generate_series(1, lemmas) g;
+    -- 977 — простое число, поэтому леммы одной страницы различны, пока lemmas_per_page меньше lemmas
+    INSERT INTO bench.index_table (page_id, lemma_id, ranking)
+    SELECT p, 1 + (p * 31 + k * 977) % lemmas, 1 + k % 5
+    FROM generate_series(1, pages) p,
+         generate_series(1, lemmas_per_page) k;
+    ANALYZE bench.lemma, bench.index_table;
+    PERFORM bench.measure(pages, lemmas, FALSE, repeats);
+
+    CREATE UNIQUE INDEX ON bench.lemma (site_id, lemma);
+    CREATE UNIQUE INDEX ON bench.index_table (lemma_id, page_id) INCLUDE (ranking);
+    CREATE INDEX ON bench.index_table (page_id);
+    ANALYZE bench.lemma, bench.index_table;
+    PERFORM bench.measure(pages, lemmas, TRUE, repeats);
+END;
+$$ LANGUAGE plpgsql;
+
+SELECT bench.run(1000, 20000, 200, 20);
+SELECT bench.run(10000, 50000, 200, 20);
+SELECT bench.run(50000, 100000, 200, 10);
+
+SELECT r.pages, r.index_rows, r.query, before.avg_ms AS without_indexes_ms, r.avg_ms AS with_indexes_ms
+FROM bench.result r
+         JOIN bench.result before ON before.pages = r.pages AND before.query = r.query AND NOT before.indexed
+WHERE r.indexed
+ORDER BY r.query, r.pages;
+
+DROP SCHEMA bench CASCADE;
@@ -12,4 +12,9 @@ import org.springframework.stereotype.Component;
 public class ConnectionProfile {
     private String userAgent;
     private String referrer;
+    private int connectTimeoutMillis = 5000;
+    private int readTimeoutMillis = 10000;
+    private int maxConnectionsPerHost = 8;
+    private boolean compression = true;
+    private boolean http2 = false;
 }
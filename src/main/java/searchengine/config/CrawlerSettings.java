@@ -0,0 +1,47 @@
+package searchengine.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@Getter
+@Setter
+@Component
+@ConfigurationProperties(prefix = "crawler-settings")
+public class CrawlerSettings {
+    private CrawlerEngine engine = CrawlerEngine.FORK_JOIN;
+    private FrontierMode frontier = FrontierMode.MEMORY;
+    private int frontierBatchSize = 500;
+    private VisitedTracking visitedTracking = VisitedTracking.EXACT;
+    private int expectedUrlsPerSite = 100_000;
+    private double maxFalsePositiveRate = 0.001;
+    private List<String> strippedParameters = new ArrayList<>(List.of("utm_*", "gclid", "fbclid", "yclid",
+            "_openstat", "sessionid", "sid", "jsessionid", "phpsessid"));
+    private List<String> indexFileNames = new ArrayList<>(List.of("index.html", "index.htm", "index.php",
+            "default.asp", "default.aspx"));
+    private boolean lowercasePaths = false;
+    private boolean followCanonicalLinks = true;
+    private boolean incremental = false;
+    private boolean respectRobotsTxt = true;
+    private boolean useSitemaps = true;
+    private int maxSitemapUrls = 50_000;
+    private boolean nearDuplicateDetection = true;
+    private int maxSimHashDistance = 3;
+    private int maxDepth = 0;
+    private int maxPagesPerSite = 0;
+    private int maxConcurrentRequests = 32;
+    private int workerThreads = Runtime.getRuntime().availableProcessors();
+    private int parseThreads = Runtime.getRuntime().availableProcessors();
+    private int lemmatizeThreads = Runtime.getRuntime().availableProcessors();
+    private int persistThreads = 4;
+    private int stageQueueCapacity = 64;
+    private double requestsPerSecond = 2.0;
+    private int maxConcurrencyPerHost = 4;
+    private double maxBackoffFactor = 32.0;
+    private int timeoutMinutes = 60;
+    private int pipelineDrainSeconds = 120;
+}
@@ -0,0 +1,18 @@
+package searchengine.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Getter
+@Setter
+@Component
+@ConfigurationProperties(prefix = "ingestion-settings")
+public class IngestionSettings {
+    private String rootDirectory = "ingest";
+    private int readerThreads = 2;
+    private int workerThreads = Runtime.getRuntime().availableProcessors();
+    private int queueCapacity = 256;
+    private int maxRecordBytes = 10 * 1024 * 1024;
+}
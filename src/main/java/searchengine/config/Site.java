@@ -4,6 +4,8 @@ import lombok.Getter;
 import lombok.Setter;
 import org.springframework.stereotype.Component;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Objects;
 
 @Setter
@@ -12,6 +14,12 @@ import java.util.Objects;
 public class Site {
     private String url;
     private String name;
+    private Double requestsPerSecond;
+    private Integer maxConcurrency;
+    private Integer maxDepth;
+    private Integer maxPages;
+    private List<String> includePatterns = new ArrayList<>();
+    private List<String> excludePatterns = new ArrayList<>();
 
     @Override
     public boolean equals(Object o) {
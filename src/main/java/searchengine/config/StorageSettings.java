@@ -0,0 +1,18 @@
+package searchengine.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Getter
+@Setter
+@Component
+@ConfigurationProperties(prefix = "storage-settings")
+public class StorageSettings {
+    private int indexBatchSize = 1000;
+    private int lemmaIdBlockSize = 1000;
+    private long lemmaFlushIntervalMillis = 2000;
+    private boolean bulkLoad = true;
+    private int copyBufferRows = 50000;
+}
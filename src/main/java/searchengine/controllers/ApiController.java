@@ -36,6 +36,11 @@ public class ApiController {
         return siteIndexingService.stopIndexing();
     }
 
+    @PostMapping("/startIngestion")
+    public IndexingResponse startIngestion(@RequestParam String path) {
+        return siteIndexingService.startIngestion(path);
+    }
+
     @PostMapping("/indexPage")
     public IndexingResponse indexPage(@RequestParam String url) {
         return siteIndexingService.indexPage(url);
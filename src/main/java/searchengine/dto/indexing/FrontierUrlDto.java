@@ -0,0 +1,12 @@
+package searchengine.dto.indexing;
+
+import lombok.Data;
+
+@Data
+public class FrontierUrlDto {
+    private Long id;
+    private String url;
+    private long fingerprint;
+    private int depth;
+    private int priority;
+}
@@ -9,4 +9,13 @@ public class PageDto {
     private String path;
     private Integer code;
     private String content;
+    private String bodyHash;
+    private String title;
+    private String text;
+    private byte[] positions;
+    private String etag;
+    private String lastModified;
+    private String contentHash;
+    private Long simHash;
+    private Integer duplicateOf;
 }
@@ -13,4 +13,5 @@ public class SiteDto {
     private String lastError;
     private String url;
     private String name;
+    private boolean active;
 }
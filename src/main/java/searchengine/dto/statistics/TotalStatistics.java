@@ -8,4 +8,6 @@ public class TotalStatistics {
     private int pages;
     private int lemmas;
     private boolean indexing;
+    private int morphologyCacheSize;
+    private double morphologyCacheHitRate;
 }
@@ -22,6 +22,14 @@ public class DefaultAdvice {
         return new ResponseEntity<>(response, HttpStatus.BAD_REQUEST);
     }
 
+    @ExceptionHandler(IngestionPathException.class)
+    public ResponseEntity<IndexingResponse> handleIndexingException(IngestionPathException e) {
+        IndexingResponse response = new IndexingResponse();
+        response.setError(e.getMessage());
+        response.setResult(false);
+        return new ResponseEntity<>(response, HttpStatus.BAD_REQUEST);
+    }
+
     @ExceptionHandler(IndexingNotStartedException.class)
     public ResponseEntity<IndexingResponse> handleIndexingException(IndexingNotStartedException e) {
         IndexingResponse response = new IndexingResponse();
@@ -46,7 +54,7 @@ public class DefaultAdvice {
         return new ResponseEntity<>(response, HttpStatus.ACCEPTED);
     }
 
-    @ExceptionHandler({EmptySitesListException.class, PageIsNotAvailableException.class})
+    @ExceptionHandler({EmptySitesListException.class, PageIsNotAvailableException.class, SiteIsNotIndexedException.class})
     public ResponseEntity<IndexingResponse> handleIndexingException(Exception e) {
         IndexingResponse response = new IndexingResponse();
         response.setError(e.getMessage());
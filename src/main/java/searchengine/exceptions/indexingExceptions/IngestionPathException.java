@@ -0,0 +1,7 @@
+package searchengine.exceptions.indexingExceptions;
+
+public class IngestionPathException extends RuntimeException {
+    public IngestionPathException() {
+        super("Указанный путь не найден или находится вне каталога для загрузки");
+    }
+}
@@ -0,0 +1,7 @@
+package searchengine.exceptions.indexingExceptions;
+
+public class SiteIsNotIndexedException extends RuntimeException {
+    public SiteIsNotIndexedException() {
+        super("Сайт не проиндексирован");
+    }
+}
@@ -0,0 +1,44 @@
+package searchengine.model;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.hibernate.annotations.OnDelete;
+import org.hibernate.annotations.OnDeleteAction;
+
+import javax.persistence.*;
+
+@Entity
+@Getter
+@Setter
+@Table(name = "frontier", indexes = {
+        @javax.persistence.Index(name = "idx_frontier_site_fingerprint", columnList = "site_id, fingerprint", unique = true),
+        @javax.persistence.Index(name = "idx_frontier_site_status_priority", columnList = "site_id, status, priority, id")
+})
+public class FrontierUrl {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @Column(name = "id", nullable = false, columnDefinition = "BIGINT")
+    private Long id;
+
+    @ManyToOne
+    @JoinColumn(name = "site_id", nullable = false, columnDefinition = "INT")
+    @OnDelete(action = OnDeleteAction.CASCADE)
+    private Site site;
+
+    @Column(name = "url", nullable = false, columnDefinition = "TEXT")
+    private String url;
+
+    @Column(name = "fingerprint", nullable = false, columnDefinition = "BIGINT")
+    private Long fingerprint;
+
+    @Column(name = "depth", nullable = false, columnDefinition = "INT")
+    private Integer depth;
+
+    @Column(name = "priority", nullable = false, columnDefinition = "INT")
+    private Integer priority;
+
+    @Column(name = "status", nullable = false, columnDefinition = "VARCHAR(16)")
+    @Enumerated(EnumType.STRING)
+    private FrontierStatus status;
+}
@@ -10,7 +10,10 @@ import javax.persistence.*;
 @Entity
 @Getter
 @Setter
-@Table(name = "index_table")
+@Table(name = "index_table", indexes = {
+        @javax.persistence.Index(name = "idx_index_lemma_page", columnList = "lemma_id, page_id, site_id", unique = true),
+        @javax.persistence.Index(name = "idx_index_page", columnList = "page_id")
+})
 public class Index {
 
     @Id
@@ -28,6 +31,9 @@ public class Index {
     @OnDelete(action = OnDeleteAction.CASCADE)
     private Lemma lemma;
 
+    @Column(name = "site_id", nullable = false, columnDefinition = "INT")
+    private Integer siteId;
+
     @Column(name = "ranking", nullable = false, columnDefinition = "FLOAT")
     private Float rank;
 }
@@ -10,7 +10,9 @@ import javax.persistence.*;
 @Entity
 @Getter
 @Setter
-@Table(name = "lemma")
+@Table(name = "lemma", indexes = {
+        @javax.persistence.Index(name = "idx_lemma_site_lemma", columnList = "site_id, lemma", unique = true)
+})
 public class Lemma {
 
     @Id
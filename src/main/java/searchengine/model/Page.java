@@ -30,7 +30,34 @@ public class Page {
     @Column(name = "code", nullable = false, columnDefinition = "INT")
     private Integer code;
 
-    @Column(name = "content", nullable = false, columnDefinition = "TEXT")
+    @Column(name = "content", columnDefinition = "TEXT")
     private String content;
 
+    @Column(name = "body_hash", columnDefinition = "VARCHAR(64)")
+    private String bodyHash;
+
+    @Column(name = "title", columnDefinition = "TEXT")
+    private String title;
+
+    @Column(name = "text", columnDefinition = "TEXT")
+    private String text;
+
+    @Column(name = "positions", columnDefinition = "BYTEA")
+    private byte[] positions;
+
+    @Column(name = "etag", columnDefinition = "VARCHAR(255)")
+    private String etag;
+
+    @Column(name = "last_modified", columnDefinition = "VARCHAR(64)")
+    private String lastModified;
+
+    @Column(name = "content_hash", columnDefinition = "VARCHAR(64)")
+    private String contentHash;
+
+    @Column(name = "simhash", columnDefinition = "BIGINT")
+    private Long simHash;
+
+    @Column(name = "duplicate_of", columnDefinition = "INT")
+    private Integer duplicateOf;
+
 }
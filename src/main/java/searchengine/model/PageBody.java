@@ -0,0 +1,22 @@
+package searchengine.model;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import javax.persistence.*;
+
+@Entity
+@Getter
+@Setter
+@Table(name = "page_body")
+public class PageBody {
+    @Id
+    @Column(name = "hash", nullable = false, columnDefinition = "VARCHAR(64)")
+    private String hash;
+
+    @Column(name = "data", nullable = false, columnDefinition = "BYTEA")
+    private byte[] data;
+
+    @Column(name = "size", nullable = false, columnDefinition = "INT")
+    private Integer size;
+}
@@ -35,4 +35,7 @@ public class Site {
 
     @Column(name = "name", nullable = false, columnDefinition = "VARCHAR(255)")
     private String name;
+
+    @Column(name = "active", nullable = false)
+    private boolean active = true;
 }
@@ -0,0 +1,29 @@
+package searchengine.repositories;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+import searchengine.model.FrontierStatus;
+import searchengine.model.FrontierUrl;
+
+import java.util.List;
+
+@Repository
+public interface FrontierRepository extends JpaRepository<FrontierUrl, Long> {
+    boolean existsBySiteIdAndStatusIn(Integer siteId, List<FrontierStatus> statuses);
+
+    @Transactional
+    @Modifying
+    @Query("UPDATE FrontierUrl f SET f.status = :status WHERE f.site.id = :siteId AND f.status = :previous")
+    int updateStatus(@Param("siteId") Integer siteId,
+                     @Param("previous") FrontierStatus previous,
+                     @Param("status") FrontierStatus status);
+
+    @Transactional
+    @Modifying
+    @Query("DELETE FROM FrontierUrl f WHERE f.site.id = :siteId")
+    void deleteBySiteId(@Param("siteId") Integer siteId);
+}
@@ -1,6 +1,7 @@
 package searchengine.repositories;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
@@ -19,12 +20,28 @@ public interface LemmaRepository extends JpaRepository<Lemma, Integer> {
 
     int countBySiteId(Integer siteId);
 
+    @Transactional
+    @Modifying
+    @Query(value = "UPDATE lemma SET frequency = frequency - 1, postings = NULL WHERE site_id = :siteId AND id IN (:ids)",
+            nativeQuery = true)
+    void decrementFrequencies(@Param("siteId") Integer siteId, @Param("ids") List<Integer> ids);
+
+    @Transactional
+    @Modifying
+    @Query(value = "UPDATE lemma SET postings = NULL WHERE site_id = :siteId AND id IN (:ids)", nativeQuery = true)
+    void invalidatePostings(@Param("siteId") Integer siteId, @Param("ids") List<Integer> ids);
+
+    @Transactional
+    @Modifying
+    @Query("DELETE FROM Lemma l WHERE l.site.id = :siteId AND l.id IN :ids AND l.frequency <= 0")
+    void deleteUnusedByIdIn(@Param("siteId") Integer siteId, @Param("ids") List<Integer> ids);
+
     @Transactional(readOnly = true)
-    @Query("SELECT COUNT(DISTINCT l.site.id) FROM Lemma l")
+    @Query("SELECT COUNT(DISTINCT l.site.id) FROM Lemma l WHERE l.site.active = true")
     long getTotalSiteCount();
 
     @Transactional(readOnly = true)
-    @Query("SELECT l.lemma FROM Lemma l GROUP BY l.lemma HAVING COUNT(DISTINCT l.site.id) > :minSiteCount")
+    @Query("SELECT l.lemma FROM Lemma l WHERE l.site.active = true GROUP BY l.lemma HAVING COUNT(DISTINCT l.site.id) > :minSiteCount")
     List<String> findCommonLemmas(@Param("minSiteCount") long minSiteCount);
 
     List<Lemma> findByLemmaInAndSiteIdOrderByFrequencyAsc(List<String> lemmas, Integer siteId);
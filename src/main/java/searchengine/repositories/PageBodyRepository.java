@@ -0,0 +1,30 @@
+package searchengine.repositories;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+import searchengine.model.PageBody;
+
+@Repository
+public interface PageBodyRepository extends JpaRepository<PageBody, String> {
+    @Transactional
+    @Modifying
+    @Query(value = "INSERT INTO page_body (hash, data, size) VALUES (:hash, :data, :size) ON CONFLICT (hash) DO NOTHING",
+            nativeQuery = true)
+    void insertIfAbsent(@Param("hash") String hash, @Param("data") byte[] data, @Param("size") int size);
+
+    @Transactional
+    @Modifying
+    @Query(value = "DELETE FROM page_body b WHERE NOT EXISTS (SELECT 1 FROM page p WHERE p.body_hash = b.hash)",
+            nativeQuery = true)
+    int deleteUnreferenced();
+
+    @Transactional
+    @Modifying
+    @Query(value = "DELETE FROM page_body b WHERE b.hash = :hash "
+            + "AND NOT EXISTS (SELECT 1 FROM page p WHERE p.body_hash = :hash)", nativeQuery = true)
+    int deleteIfUnreferenced(@Param("hash") String hash);
+}
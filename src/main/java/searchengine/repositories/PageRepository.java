@@ -1,7 +1,11 @@
 package searchengine.repositories;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 import searchengine.model.Page;
 
 import java.util.List;
@@ -14,4 +18,37 @@ public interface PageRepository extends JpaRepository<Page, Integer> {
     int countBySiteId(Integer siteId);
 
     List<Page> findByIdIn(List<Integer> ids);
+
+    List<Page> findByDuplicateOf(Integer duplicateOf);
+
+    Optional<Validators> findValidatorsByPathAndSiteId(String path, Integer siteId);
+
+    @Query("SELECT p.path FROM Page p WHERE p.site.id = :siteId")
+    List<String> findPathsBySiteId(@Param("siteId") Integer siteId);
+
+    @Query("SELECT p.id AS id, p.simHash AS simHash FROM Page p "
+            + "WHERE p.site.id = :siteId AND p.simHash IS NOT NULL AND p.duplicateOf IS NULL")
+    List<SimHashEntry> findSimHashesBySiteId(@Param("siteId") Integer siteId);
+
+    @Transactional
+    @Modifying
+    @Query("UPDATE Page p SET p.duplicateOf = :duplicateOf WHERE p.id = :id")
+    void updateDuplicateOf(@Param("id") Integer id, @Param("duplicateOf") Integer duplicateOf);
+
+    @Transactional
+    @Modifying
+    @Query("UPDATE Page p SET p.duplicateOf = NULL WHERE p.duplicateOf = :id")
+    void clearDuplicatesOf(@Param("id") Integer id);
+
+    interface Validators {
+        String getEtag();
+
+        String getLastModified();
+    }
+
+    interface SimHashEntry {
+        Integer getId();
+
+        Long getSimHash();
+    }
 }
@@ -1,19 +1,42 @@
 package searchengine.repositories;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 import searchengine.model.Site;
 
 import java.util.List;
 
 @Repository
 public interface SiteRepository extends JpaRepository<Site, Integer> {
-    void deleteSiteByUrl(String url);
+    Site findFirstByUrlOrderByIdDesc(String url);
 
-    Site findSiteByUrl(String url);
+    Site findSiteByUrlAndActiveTrue(String url);
 
     boolean existsSiteByUrl(String url);
 
+    @Query("SELECT COUNT(DISTINCT s.url) FROM Site s")
+    long countUrls();
+
+    @Query("SELECT s FROM Site s WHERE s.id IN (SELECT MAX(g.id) FROM Site g GROUP BY g.url)")
+    List<Site> findLatestGenerations();
+
+    @Transactional
+    @Modifying
+    @Query(value = "UPDATE site SET active = (id = :id) WHERE url = :url", nativeQuery = true)
+    void activate(@Param("url") String url, @Param("id") Integer id);
+
+    @Query("SELECT s.id FROM Site s WHERE s.url = :url AND s.active = false")
+    List<Integer> findInactiveIdsByUrl(@Param("url") String url);
+
+    @Transactional
+    @Modifying
+    @Query("DELETE FROM Site s WHERE s.url = :url AND s.active = false")
+    int deleteInactiveByUrl(@Param("url") String url);
+
     long count();
 
     List<Site> findAll();
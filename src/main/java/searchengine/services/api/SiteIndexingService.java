@@ -8,4 +8,6 @@ public interface SiteIndexingService {
     IndexingResponse stopIndexing();
 
     IndexingResponse indexPage(String url);
+
+    IndexingResponse startIngestion(String path);
 }
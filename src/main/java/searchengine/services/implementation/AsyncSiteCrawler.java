@@ -0,0 +1,180 @@
+package searchengine.services.implementation;
+
+import lombok.extern.slf4j.Slf4j;
+import searchengine.config.CrawlerSettings;
+import searchengine.dto.indexing.FrontierUrlDto;
+import searchengine.dto.indexing.PageDto;
+import searchengine.services.utilities.FetchResult;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Обходит сайт без блокирующих потоков: запросы выполняются асинхронно через общий PageFetcher,
+ * а ожидание очереди хоста в PolitenessScheduler реализовано отложенной задачей планировщика, а не Thread.sleep.
+ */
+@Slf4j
+public class AsyncSiteCrawler {
+    private final CrawlContext context;
+    private final CrawlerSettings crawlerSettings;
+    private final CrawlFrontier frontier;
+    private final IndexingPipeline pipeline;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicBoolean stopRequested = new AtomicBoolean(false);
+    private final AtomicBoolean closed = new AtomicBoolean(false);
+    private final AtomicBoolean dispatchScheduled = new AtomicBoolean(false);
+    private final CountDownLatch finished = new CountDownLatch(1);
+    private final ScheduledExecutorService scheduler;
+    private final ExecutorService workers;
+
+    public AsyncSiteCrawler(CrawlContext context, CrawlerSettings crawlerSettings, CrawlFrontier frontier) {
+        this.context = context;
+        this.crawlerSettings = crawlerSettings;
+        this.frontier = frontier;
+        this.pipeline = new IndexingPipeline(context, frontier, crawlerSettings, this::dispatch);
+        this.workers = Executors.newFixedThreadPool(crawlerSettings.getWorkerThreads());
+        this.scheduler = Executors.newSingleThreadScheduledExecutor();
+    }
+
+    public boolean crawl() throws InterruptedException {
+        try {
+            frontier.offer(context.getRootUrl(), 0);
+            dispatch();
+            return finished.await(crawlerSettings.getTimeoutMinutes(), TimeUnit.MINUTES);
+        } finally {
+            closed.set(true);
+            scheduler.shutdownNow();
+            workers.shutdownNow();
+            if (stopRequested.get()) {
+                pipeline.shutdownNow();
+            } else {
+                pipeline.shutdown();
+            }
+            frontier.flush();
+        }
+    }
+
+    public void stop() {
+        stopRequested.set(true);
+        finished.countDown();
+    }
+
+    /**
+     * После завершения crawl новые загрузки не начинаются: pipeline дорабатывает уже загруженные страницы
+     * и продолжает вызывать dispatch, но пул workers уже остановлен.
+     */
+    private void dispatch() {
+        while (!stopRequested.get() && !closed.get()) {
+            if (context.getBudget().isExhausted()) {
+                if (inFlight.get() == 0) {
+                    log.info("Page budget of site {} is exhausted", context.getSiteDto().getUrl());
+                    finished.countDown();
+                }
+                return;
+            }
+            int current = inFlight.get();
+            if (current >= crawlerSettings.getMaxConcurrentRequests()) {
+                return;
+            }
+            if (!inFlight.compareAndSet(current, current + 1)) {
+                continue;
+            }
+            FrontierUrlDto entry = frontier.poll();
+            if (entry == null) {
+                if (inFlight.decrementAndGet() == 0 && pipeline.isIdle() && frontier.isEmpty()) {
+                    finished.countDown();
+                }
+                return;
+            }
+            long wait = context.getPolitenessScheduler().tryAcquire(entry.getUrl());
+            if (wait > 0) {
+                frontier.requeue(entry);
+                inFlight.decrementAndGet();
+                scheduleDispatch(wait);
+                return;
+            }
+            if (!context.getBudget().tryStartPage()) {
+                context.getPolitenessScheduler().release(entry.getUrl(), 0, null);
+                frontier.requeue(entry);
+                inFlight.decrementAndGet();
+                continue;
+            }
+            fetch(entry);
+        }
+    }
+
+    private void scheduleDispatch(long delay) {
+        if (!dispatchScheduled.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            scheduler.schedule(() -> {
+                dispatchScheduled.set(false);
+                dispatch();
+            }, delay, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            dispatchScheduled.set(false);
+        }
+    }
+
+    private void fetch(FrontierUrlDto entry) {
+        String url = entry.getUrl();
+        CompletableFuture<FetchResult> fetched;
+        try {
+            FetchResult prefetched = context.takePrefetched(url);
+            if (prefetched != null) {
+                fetched = CompletableFuture.completedFuture(prefetched);
+            } else {
+                PageDto validators = context.getValidators(url);
+                fetched = context.getPageFetcher().fetchAsync(url,
+                        validators == null ? null : validators.getEtag(),
+                        validators == null ? null : validators.getLastModified());
+            }
+        } catch (RuntimeException e) {
+            log.error("Error processing URL: {}. Error message: {}", url, e.getMessage());
+            release(entry, 0, null, true);
+            return;
+        }
+        fetched.whenCompleteAsync((response, e) -> {
+            boolean completed = true;
+            if (e != null) {
+                if (!stopRequested.get()) {
+                    log.error("Error processing URL: {}. Error message: {}", url, e.getMessage());
+                    context.pageFetched(url, 0);
+                }
+            } else {
+                completed = process(entry, response);
+            }
+            int statusCode = response == null ? 0 : response.getStatusCode();
+            String retryAfter = response == null ? null : response.getRetryAfter();
+            release(entry, statusCode, retryAfter, completed);
+        }, workers);
+    }
+
+    /**
+     * @return true, если ссылку можно отметить завершённой сразу; HTML-страницу завершит pipeline
+     */
+    private boolean process(FrontierUrlDto entry, FetchResult response) {
+        int statusCode = response.getStatusCode();
+        if (stopRequested.get()) {
+            return false;
+        }
+        context.pageFetched(entry.getUrl(), statusCode);
+        if (statusCode >= 400 || response.isNotModified() || !response.isHtml()) {
+            return true;
+        }
+        pipeline.submit(entry, response);
+        return false;
+    }
+
+    private void release(FrontierUrlDto entry, int statusCode, String retryAfter, boolean completed) {
+        context.getPolitenessScheduler().release(entry.getUrl(), statusCode, retryAfter);
+        if (completed) {
+            frontier.complete(entry);
+        }
+        inFlight.decrementAndGet();
+        dispatch();
+    }
+}
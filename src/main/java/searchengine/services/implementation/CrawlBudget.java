@@ -0,0 +1,82 @@
+package searchengine.services.implementation;
+
+import java.net.URI;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+
+/**
+ * Ограничения обхода одного сайта: глубина, число загружаемых страниц и шаблоны адресов.
+ * Здесь же считается приоритет ссылки: чем меньше число, тем раньше её нужно загрузить.
+ */
+public class CrawlBudget {
+    private final int maxDepth;
+    private final int maxPages;
+    private final List<Pattern> includePatterns;
+    private final List<Pattern> excludePatterns;
+    private final AtomicInteger startedPages;
+
+    public CrawlBudget(int maxDepth, int maxPages, List<String> includePatterns, List<String> excludePatterns,
+                       int alreadyFetched) {
+        this.maxDepth = maxDepth;
+        this.maxPages = maxPages;
+        this.includePatterns = includePatterns.stream().map(Pattern::compile).toList();
+        this.excludePatterns = excludePatterns.stream().map(Pattern::compile).toList();
+        this.startedPages = new AtomicInteger(alreadyFetched);
+    }
+
+    /**
+     * Корень сайта допускается всегда, иначе с него нельзя было бы найти подходящие под шаблоны страницы.
+     */
+    public boolean admits(String url, int depth) {
+        if (depth == 0) {
+            return true;
+        }
+        if (maxDepth > 0 && depth > maxDepth) {
+            return false;
+        }
+        if (excludePatterns.stream().anyMatch(pattern -> pattern.matcher(url).find())) {
+            return false;
+        }
+        return includePatterns.isEmpty() || includePatterns.stream().anyMatch(pattern -> pattern.matcher(url).find());
+    }
+
+    public boolean tryStartPage() {
+        if (maxPages <= 0) {
+            return true;
+        }
+        int started;
+        do {
+            started = startedPages.get();
+            if (started >= maxPages) {
+                return false;
+            }
+        } while (!startedPages.compareAndSet(started, started + 1));
+        return true;
+    }
+
+    public boolean isExhausted() {
+        return maxPages > 0 && startedPages.get() >= maxPages;
+    }
+
+    /**
+     * Неглубокие страницы с коротким путём идут первыми, адреса с параметрами запроса
+     * (фильтры, календари, сортировки) откладываются.
+     */
+    public int priority(String url, int depth) {
+        int segments = 0;
+        boolean hasQuery = false;
+        try {
+            URI uri = URI.create(url);
+            String path = uri.getRawPath() == null ? "" : uri.getRawPath();
+            for (String segment : path.split("/")) {
+                if (!segment.isEmpty()) {
+                    segments++;
+                }
+            }
+            hasQuery = uri.getRawQuery() != null;
+        } catch (IllegalArgumentException ignored) {
+        }
+        return depth * 100 + Math.min(segments, 9) * 10 + (hasQuery ? 50 : 0);
+    }
+}
@@ -0,0 +1,109 @@
+package searchengine.services.implementation;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import searchengine.dto.indexing.PageDto;
+import searchengine.dto.indexing.SiteDto;
+import searchengine.services.utilities.FetchResult;
+import searchengine.services.utilities.PageFetcher;
+import searchengine.services.utilities.ParsedPage;
+import searchengine.services.utilities.RobotsTxt;
+import searchengine.services.utilities.UrlCanonicalizer;
+import searchengine.services.utilities.VisitedUrls;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+@Getter
+@RequiredArgsConstructor
+public class CrawlContext {
+    private final SiteDto siteDto;
+    private final PageFetcher pageFetcher;
+    private final PageIndexer pageIndexer;
+    private final PolitenessScheduler politenessScheduler;
+    private final VisitedUrls visitedUrls;
+    private final UrlCanonicalizer urlCanonicalizer;
+    private final RobotsTxt robotsTxt;
+    private final CrawlBudget budget;
+    private final boolean followCanonicalLinks;
+    private final boolean incremental;
+    @Getter(AccessLevel.NONE)
+    private final Set<String> reachedPaths = ConcurrentHashMap.newKeySet();
+    @Getter(AccessLevel.NONE)
+    private final Map<String, FetchResult> prefetched = new ConcurrentHashMap<>();
+
+    public String getRootUrl() {
+        return Objects.requireNonNullElse(canonicalize(siteDto.getUrl()), siteDto.getUrl());
+    }
+
+    /**
+     * Ответ, уже полученный до начала обхода (главная страница при проверке доступности сайта).
+     */
+    public void prefetch(String url, FetchResult response) {
+        prefetched.put(url, response);
+    }
+
+    public FetchResult takePrefetched(String url) {
+        return prefetched.isEmpty() ? null : prefetched.remove(url);
+    }
+
+    public PageDto getValidators(String url) {
+        return incremental ? pageIndexer.getValidators(url, siteDto) : null;
+    }
+
+    /**
+     * При инкрементальном обходе удаляет страницы, которые ответили 404 или 410, остальные запоминает.
+     */
+    public void pageFetched(String url, int statusCode) {
+        if (!incremental) {
+            return;
+        }
+        if (statusCode == 404 || statusCode == 410) {
+            pageIndexer.deletePage(pathOf(url), siteDto);
+        } else {
+            reachedPaths.add(pathOf(url));
+        }
+    }
+
+    public void pageStored(String pageUrl) {
+        if (incremental) {
+            reachedPaths.add(pathOf(pageUrl));
+        }
+    }
+
+    /**
+     * Вызывается только после полного инкрементального обхода: иначе удалятся страницы,
+     * до которых обход просто не успел дойти.
+     */
+    public int deleteUnreachedPages() {
+        return incremental ? pageIndexer.deleteUnreachedPages(siteDto, reachedPaths) : 0;
+    }
+
+    public String canonicalize(String url) {
+        String canonical = urlCanonicalizer.canonicalize(url);
+        return canonical != null && canonical.startsWith(siteDto.getUrl()) && robotsTxt.isAllowed(canonical)
+                ? canonical : null;
+    }
+
+    /**
+     * @return адрес, под которым страницу нужно сохранить, или null, если страница с тем же
+     * rel=canonical уже обработана
+     */
+    public String resolvePageUrl(String url, ParsedPage page) {
+        if (!followCanonicalLinks) {
+            return url;
+        }
+        String canonical = urlCanonicalizer.canonicalize(page.getCanonicalLink());
+        if (canonical == null || canonical.equals(url) || !canonical.startsWith(siteDto.getUrl())) {
+            return url;
+        }
+        return visitedUrls.add(canonical) ? canonical : null;
+    }
+
+    private String pathOf(String url) {
+        return url.substring(siteDto.getUrl().length() - 1);
+    }
+}
@@ -0,0 +1,23 @@
+package searchengine.services.implementation;
+
+import searchengine.dto.indexing.FrontierUrlDto;
+
+import java.util.Comparator;
+
+public interface CrawlFrontier {
+    Comparator<FrontierUrlDto> PRIORITY_ORDER = Comparator.comparingInt(FrontierUrlDto::getPriority)
+            .thenComparing(FrontierUrlDto::getId, Comparator.nullsLast(Comparator.naturalOrder()));
+
+    boolean offer(String url, int depth);
+
+    FrontierUrlDto poll();
+
+    void requeue(FrontierUrlDto url);
+
+    void complete(FrontierUrlDto url);
+
+    boolean isEmpty();
+
+    default void flush() {
+    }
+}
@@ -0,0 +1,59 @@
+package searchengine.services.implementation;
+
+import searchengine.dto.indexing.FrontierUrlDto;
+import searchengine.services.utilities.UrlFingerprint;
+import searchengine.services.utilities.VisitedUrls;
+
+import java.util.Queue;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class InMemoryCrawlFrontier implements CrawlFrontier {
+    private final VisitedUrls visitedUrls;
+    private final CrawlBudget budget;
+    private final Queue<FrontierUrlDto> queue = new PriorityBlockingQueue<>(1024, PRIORITY_ORDER);
+    private final AtomicLong sequence = new AtomicLong();
+
+    public InMemoryCrawlFrontier(VisitedUrls visitedUrls, CrawlBudget budget) {
+        this.visitedUrls = visitedUrls;
+        this.budget = budget;
+    }
+
+    @Override
+    public boolean offer(String url, int depth) {
+        if (!budget.admits(url, depth)) {
+            return false;
+        }
+        long fingerprint = UrlFingerprint.of(url);
+        if (!visitedUrls.add(fingerprint)) {
+            return false;
+        }
+        FrontierUrlDto dto = new FrontierUrlDto();
+        dto.setUrl(url);
+        dto.setFingerprint(fingerprint);
+        dto.setDepth(depth);
+        dto.setPriority(budget.priority(url, depth));
+        dto.setId(sequence.incrementAndGet());
+        queue.add(dto);
+        return true;
+    }
+
+    @Override
+    public FrontierUrlDto poll() {
+        return queue.poll();
+    }
+
+    @Override
+    public void requeue(FrontierUrlDto url) {
+        queue.add(url);
+    }
+
+    @Override
+    public void complete(FrontierUrlDto url) {
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return queue.isEmpty();
+    }
+}
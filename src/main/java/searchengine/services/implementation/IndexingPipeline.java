@@ -0,0 +1,142 @@
+package searchengine.services.implementation;
+
+import lombok.extern.slf4j.Slf4j;
+import searchengine.config.CrawlerSettings;
+import searchengine.dto.indexing.FrontierUrlDto;
+import searchengine.services.utilities.FetchResult;
+import searchengine.services.utilities.ParsedPage;
+import searchengine.services.utilities.TermPositions;
+
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Обработка загруженных страниц сайта по стадиям: разбор HTML → лемматизация → запись в базу.
+ * У каждой стадии свой пул потоков и ограниченная очередь. Если очередь стадии заполнена,
+ * задачу выполняет поток предыдущей стадии, так что отставание базы в итоге замедляет загрузку страниц.
+ */
+@Slf4j
+public class IndexingPipeline {
+    private final CrawlContext context;
+    private final CrawlFrontier frontier;
+    private final Runnable progressListener;
+    private final ThreadPoolExecutor parsers;
+    private final ThreadPoolExecutor lemmatizers;
+    private final ThreadPoolExecutor writers;
+    private final AtomicInteger pending = new AtomicInteger();
+    private final long drainMillis;
+
+    /**
+     * @param progressListener вызывается, когда у страницы найдены ссылки и когда страница обработана полностью
+     */
+    public IndexingPipeline(CrawlContext context, CrawlFrontier frontier, CrawlerSettings crawlerSettings,
+                            Runnable progressListener) {
+        this.context = context;
+        this.frontier = frontier;
+        this.progressListener = progressListener;
+        this.drainMillis = TimeUnit.SECONDS.toMillis(crawlerSettings.getPipelineDrainSeconds());
+        this.parsers = createStage(crawlerSettings.getParseThreads(), crawlerSettings.getStageQueueCapacity());
+        this.lemmatizers = createStage(crawlerSettings.getLemmatizeThreads(), crawlerSettings.getStageQueueCapacity());
+        this.writers = createStage(crawlerSettings.getPersistThreads(), crawlerSettings.getStageQueueCapacity());
+    }
+
+    /**
+     * Передаёт HTML-страницу на обработку. Ссылка в очереди обхода отмечается завершённой после записи страницы.
+     */
+    public void submit(FrontierUrlDto entry, FetchResult response) {
+        pending.incrementAndGet();
+        parsers.execute(() -> parse(entry, response));
+    }
+
+    /**
+     * @return true, если ни одна переданная страница не обрабатывается
+     */
+    public boolean isIdle() {
+        return pending.get() == 0;
+    }
+
+    /**
+     * Дожидается обработки уже переданных страниц, но не дольше pipelineDrainSeconds;
+     * по истечении срока или при прерывании потока оставшиеся отбрасываются.
+     */
+    public void shutdown() {
+        long deadline = System.currentTimeMillis() + drainMillis;
+        try {
+            for (ThreadPoolExecutor stage : new ThreadPoolExecutor[]{parsers, lemmatizers, writers}) {
+                stage.shutdown();
+                if (!stage.awaitTermination(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS)) {
+                    log.warn("Indexing pipeline did not drain in {} ms, {} pages dropped", drainMillis, pending.get());
+                    shutdownNow();
+                    return;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            shutdownNow();
+        }
+    }
+
+    public void shutdownNow() {
+        parsers.shutdownNow();
+        lemmatizers.shutdownNow();
+        writers.shutdownNow();
+    }
+
+    private void parse(FrontierUrlDto entry, FetchResult response) {
+        String url = entry.getUrl();
+        try {
+            ParsedPage page = ParsedPage.parse(response.getBody(), url);
+            String pageUrl = context.resolvePageUrl(url, page);
+            page.getLinks().stream()
+                    .map(context::canonicalize)
+                    .filter(Objects::nonNull)
+                    .forEach(link -> frontier.offer(link, entry.getDepth() + 1));
+            progressListener.run();
+            if (pageUrl == null) {
+                finish(entry);
+                return;
+            }
+            lemmatizers.execute(() -> lemmatize(entry, response, pageUrl, page));
+        } catch (RuntimeException e) {
+            log.warn("Error (" + e.getMessage() + ") while parsing page {}", url);
+            finish(entry);
+        }
+    }
+
+    private void lemmatize(FrontierUrlDto entry, FetchResult response, String pageUrl, ParsedPage page) {
+        try {
+            TermPositions positions = context.getPageIndexer().collectPositions(page.getText());
+            writers.execute(() -> persist(entry, response, pageUrl, page, positions));
+        } catch (Exception e) {
+            log.warn("Error (" + e.getMessage() + ") while lemmatizing page {}", pageUrl);
+            finish(entry);
+        }
+    }
+
+    private void persist(FrontierUrlDto entry, FetchResult response, String pageUrl, ParsedPage page,
+                         TermPositions positions) {
+        try {
+            context.getPageIndexer().indexPage(pageUrl, page, response.getStatusCode(),
+                    response.getEtag(), response.getLastModified(), context.getSiteDto(), positions);
+            context.pageStored(pageUrl);
+        } catch (Exception e) {
+            log.warn("Error (" + e.getMessage() + ") while processing site {}", pageUrl);
+        } finally {
+            finish(entry);
+        }
+    }
+
+    private void finish(FrontierUrlDto entry) {
+        frontier.complete(entry);
+        pending.decrementAndGet();
+        progressListener.run();
+    }
+
+    private static ThreadPoolExecutor createStage(int threads, int queueCapacity) {
+        return new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+}
@@ -0,0 +1,161 @@
+package searchengine.services.implementation;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import searchengine.config.IngestionSettings;
+import searchengine.dto.indexing.SiteDto;
+import searchengine.services.utilities.PageFetcher;
+import searchengine.services.utilities.ParsedPage;
+import searchengine.services.utilities.UrlCanonicalizer;
+import searchengine.services.utilities.WarcReader;
+import searchengine.services.utilities.WarcRecord;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Индексирует страницы из WARC-архивов и каталогов с HTML-файлами без обращения к сети.
+ * Файлы читаются параллельно и потоково, страницы передаются в PageIndexer через ограниченную очередь.
+ * HTML-файлы должны лежать в каталогах вида {@code <хост>/<путь>}.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class OfflineIngestor {
+    private final IngestionSettings ingestionSettings;
+    private final PageIndexer pageIndexer;
+    private final UrlCanonicalizer urlCanonicalizer;
+    private final AtomicBoolean stopRequested = new AtomicBoolean(false);
+
+    public void requestStop() {
+        stopRequested.set(true);
+    }
+
+    /**
+     * @param siteResolver возвращает сайт из конфигурации для адреса страницы или null, если страница чужая
+     * @return число проиндексированных страниц
+     */
+    public int ingest(Path source, Function<String, SiteDto> siteResolver) throws IOException, InterruptedException {
+        stopRequested.set(false);
+        List<Path> files;
+        try (Stream<Path> walk = Files.walk(source)) {
+            files = walk.filter(file -> Files.isRegularFile(file, LinkOption.NOFOLLOW_LINKS)).filter(OfflineIngestor::isSupported).collect(Collectors.toList());
+        }
+        log.info("Ingesting {} files from {}", files.size(), source);
+        AtomicInteger indexed = new AtomicInteger();
+        ThreadPoolExecutor workers = new ThreadPoolExecutor(ingestionSettings.getWorkerThreads(),
+                ingestionSettings.getWorkerThreads(), 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(ingestionSettings.getQueueCapacity()), new ThreadPoolExecutor.CallerRunsPolicy());
+        ExecutorService readers = Executors.newFixedThreadPool(ingestionSettings.getReaderThreads());
+        try {
+            List<Future<?>> reads = files.stream()
+                    .map(file -> readers.submit(() -> read(source, file, siteResolver, workers, indexed)))
+                    .collect(Collectors.toList());
+            for (Future<?> read : reads) {
+                try {
+                    read.get();
+                } catch (ExecutionException e) {
+                    log.warn("Ingestion of a file failed: {}", e.getCause().getMessage());
+                }
+            }
+            workers.shutdown();
+            workers.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        } finally {
+            readers.shutdownNow();
+            workers.shutdownNow();
+        }
+        log.info("Ingestion from {} finished: {} pages indexed", source, indexed.get());
+        return indexed.get();
+    }
+
+    private void read(Path root, Path file, Function<String, SiteDto> siteResolver,
+                      ExecutorService workers, AtomicInteger indexed) {
+        if (stopRequested.get()) {
+            return;
+        }
+        String name = file.getFileName().toString().toLowerCase(Locale.ROOT);
+        try {
+            if (name.endsWith(".warc") || name.endsWith(".warc.gz")) {
+                readWarc(file, siteResolver, workers, indexed);
+            } else {
+                String url = urlFromLayout(root, file, siteResolver);
+                if (url != null) {
+                    byte[] body = Files.readAllBytes(file);
+                    submit(workers, url, 200, PageFetcher.decodeBody(body, null), siteResolver, indexed);
+                }
+            }
+        } catch (IOException e) {
+            log.warn("File {} could not be read: {}", file, e.getMessage());
+        }
+    }
+
+    private void readWarc(Path file, Function<String, SiteDto> siteResolver,
+                          ExecutorService workers, AtomicInteger indexed) throws IOException {
+        try (InputStream stream = Files.newInputStream(file);
+             WarcReader reader = new WarcReader(stream, ingestionSettings.getMaxRecordBytes())) {
+            WarcRecord record;
+            while (!stopRequested.get() && (record = reader.next()) != null) {
+                String contentType = record.getContentType();
+                if (contentType != null && !contentType.contains("html")) {
+                    continue;
+                }
+                submit(workers, record.getTargetUri(), record.getStatusCode(),
+                        PageFetcher.decodeBody(record.getBody(), contentType), siteResolver, indexed);
+            }
+        }
+    }
+
+    private void submit(ExecutorService workers, String rawUrl, int statusCode, String body,
+                        Function<String, SiteDto> siteResolver, AtomicInteger indexed) {
+        String url = urlCanonicalizer.canonicalize(rawUrl);
+        SiteDto siteDto = url == null ? null : siteResolver.apply(url);
+        if (siteDto == null || statusCode >= 400 || stopRequested.get()) {
+            return;
+        }
+        workers.execute(() -> {
+            if (stopRequested.get()) {
+                return;
+            }
+            try {
+                pageIndexer.indexPage(url, ParsedPage.parse(body, url), statusCode, siteDto);
+                indexed.incrementAndGet();
+            } catch (Exception e) {
+                log.warn("Error (" + e.getMessage() + ") while ingesting page {}", url);
+            }
+        });
+    }
+
+    private String urlFromLayout(Path root, Path file, Function<String, SiteDto> siteResolver) {
+        Path relative = root.relativize(file);
+        if (relative.getNameCount() < 2) {
+            return null;
+        }
+        String host = relative.getName(0).toString().toLowerCase(Locale.ROOT);
+        String path = relative.subpath(1, relative.getNameCount()).toString().replace('\\', '/');
+        for (String scheme : List.of("https://", "http://")) {
+            String url = scheme + host + "/" + path;
+            if (siteResolver.apply(url) != null) {
+                return url;
+            }
+        }
+        log.debug("File {} does not belong to any configured site", file);
+        return null;
+    }
+
+    private static boolean isSupported(Path file) {
+        String name = file.getFileName().toString().toLowerCase(Locale.ROOT);
+        return name.endsWith(".warc") || name.endsWith(".warc.gz") || name.endsWith(".html") || name.endsWith(".htm");
+    }
+}
@@ -0,0 +1,233 @@
+package searchengine.services.implementation;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import searchengine.config.CrawlerSettings;
+import searchengine.dto.indexing.IndexDto;
+import searchengine.dto.indexing.PageDto;
+import searchengine.dto.indexing.SiteDto;
+import searchengine.services.repositoryServices.IndexCRUDService;
+import searchengine.services.repositoryServices.LemmaCRUDService;
+import searchengine.services.repositoryServices.PageCRUDService;
+import searchengine.services.utilities.LemmaFinder;
+import searchengine.services.utilities.ParsedPage;
+import searchengine.services.utilities.SimHash;
+import searchengine.services.utilities.SimHashIndex;
+import searchengine.services.utilities.TermPositions;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class PageIndexer {
+    private final PageCRUDService pageCRUDService;
+    private final LemmaCRUDService lemmaCRUDService;
+    private final IndexCRUDService indexCRUDService;
+    private final CrawlerSettings crawlerSettings;
+    private final SegmentIndex segmentIndex;
+    private final LemmaFinder lemmaFinder;
+    private final Map<Integer, SimHashIndex> simHashIndexes = new ConcurrentHashMap<>();
+
+    public void indexPage(String url, ParsedPage page, int statusCode, SiteDto siteDto) throws IOException {
+        indexPage(url, page, statusCode, null, null, siteDto);
+    }
+
+    public void indexPage(String url, ParsedPage page, int statusCode,
+                          String etag, String lastModified, SiteDto siteDto) throws IOException {
+        indexPage(url, page, statusCode, etag, lastModified, siteDto, null);
+    }
+
+    /**
+     * @param positions позиции лемм текста страницы, если они уже собраны, иначе null
+     */
+    public void indexPage(String url, ParsedPage page, int statusCode, String etag, String lastModified,
+                          SiteDto siteDto, TermPositions positions) throws IOException {
+        PageDto pageDto = pageCRUDService.createPageDto(url, page, statusCode, siteDto);
+        pageDto.setEtag(etag);
+        pageDto.setLastModified(lastModified);
+        PageDto existing = pageCRUDService.getByUrlAndSiteId(pageDto.getPath(), pageDto.getSite());
+        if (existing == null) {
+            positions = positions != null ? positions : lemmaFinder.collectPositions(page.getText());
+            pageDto.setPositions(positions.encode());
+            Map<String, Integer> lemmas = positions.getCounts();
+            computeSimHash(pageDto, lemmas);
+            pageCRUDService.create(pageDto);
+            int pageId = pageCRUDService.getByUrlAndSiteId(pageDto.getPath(), pageDto.getSite()).getId();
+            Integer duplicateOf = detectNearDuplicate(pageDto, pageId);
+            if (duplicateOf != null) {
+                pageCRUDService.markDuplicate(pageId, duplicateOf);
+                log.debug("Page {} is a near duplicate of page {}, lemmas are not saved", url, duplicateOf);
+                return;
+            }
+            indexCRUDService.addAll(pageDto.getSite(),
+                    lemmaCRUDService.saveLemmasListAndCreateIndexes(lemmas, pageId, pageDto.getSite()));
+            segmentIndex.pageChanged(siteDto, pageId);
+            return;
+        }
+        pageDto.setId(existing.getId());
+        if (Objects.equals(existing.getContentHash(), pageDto.getContentHash())) {
+            pageDto.setSimHash(existing.getSimHash());
+            pageDto.setDuplicateOf(existing.getDuplicateOf());
+            pageDto.setPositions(existing.getPositions());
+            pageCRUDService.update(pageDto);
+            log.debug("Content of the page {} has not changed", url);
+            return;
+        }
+        positions = positions != null ? positions : lemmaFinder.collectPositions(page.getText());
+        pageDto.setPositions(positions.encode());
+        Map<String, Integer> lemmas = positions.getCounts();
+        computeSimHash(pageDto, lemmas);
+        List<PageDto> duplicates = existing.getDuplicateOf() == null
+                ? pageCRUDService.getDuplicatesOf(existing.getId()) : List.of();
+        Integer duplicateOf = detectNearDuplicate(pageDto, existing.getId());
+        pageDto.setDuplicateOf(duplicateOf);
+        pageCRUDService.update(pageDto);
+        if (duplicateOf != null) {
+            log.debug("Page {} became a near duplicate of page {}", url, duplicateOf);
+        }
+        applyLemmaDelta(existing.getId(), pageDto.getSite(), duplicateOf != null ? Map.of() : lemmas);
+        segmentIndex.pageChanged(siteDto, existing.getId());
+        reindexDuplicates(duplicates, siteDto);
+    }
+
+    /**
+     * Переиндексирует одну страницу в одной транзакции: меняются только строки index_table и частоты лемм,
+     * которые отличаются у старой и новой версии страницы. Сжатые списки затронутых лемм остаются пустыми:
+     * поиск читает их из index_table, а пересобирает следующий обход сайта.
+     */
+    @Transactional
+    public void reindexPage(String url, ParsedPage page, int statusCode, SiteDto siteDto) throws IOException {
+        try {
+            indexPage(url, page, statusCode, siteDto);
+        } finally {
+            simHashIndexes.remove(siteDto.getId());
+        }
+    }
+
+    /**
+     * Готовит индексатор к обходу сайта; после обхода нужно вызвать forgetSite.
+     */
+    public void openSite(int siteId) {
+        lemmaCRUDService.openDictionary(siteId);
+    }
+
+    public void forgetSite(int siteId) {
+        simHashIndexes.remove(siteId);
+        lemmaCRUDService.closeDictionary(siteId);
+        lemmaCRUDService.buildPostings(siteId);
+    }
+
+    /**
+     * Удаляет исчезнувшую с сайта страницу вместе со строками индекса, частоты её лемм уменьшаются.
+     */
+    public void deletePage(String path, SiteDto siteDto) {
+        PageDto existing = pageCRUDService.getByUrlAndSiteId(path, siteDto.getId());
+        if (existing == null) {
+            return;
+        }
+        List<PageDto> duplicates = pageCRUDService.getDuplicatesOf(existing.getId());
+        applyLemmaDelta(existing.getId(), siteDto.getId(), Map.of());
+        pageCRUDService.deleteById(existing.getId());
+        SimHashIndex simHashIndex = simHashIndexes.get(siteDto.getId());
+        if (simHashIndex != null) {
+            simHashIndex.remove(existing.getId());
+        }
+        segmentIndex.pageChanged(siteDto, existing.getId());
+        reindexDuplicates(duplicates, siteDto);
+        log.debug("Page {} was deleted from site {}", path, siteDto.getUrl());
+    }
+
+    /**
+     * Удаляет страницы сайта, до которых не дошёл завершённый инкрементальный обход.
+     */
+    public int deleteUnreachedPages(SiteDto siteDto, Set<String> reachedPaths) {
+        List<String> unreachedPaths = pageCRUDService.getPathsBySiteId(siteDto.getId()).stream()
+                .filter(path -> !reachedPaths.contains(path))
+                .toList();
+        unreachedPaths.forEach(path -> deletePage(path, siteDto));
+        return unreachedPaths.size();
+    }
+
+    public TermPositions collectPositions(String text) {
+        return lemmaFinder.collectPositions(text);
+    }
+
+    public PageDto getValidators(String url, SiteDto siteDto) {
+        return pageCRUDService.getValidators(url.substring(siteDto.getUrl().length() - 1), siteDto.getId());
+    }
+
+    private void computeSimHash(PageDto pageDto, Map<String, Integer> lemmas) {
+        pageDto.setSimHash(lemmas.isEmpty() ? null : SimHash.compute(lemmas));
+    }
+
+    /**
+     * @return id близкой страницы сайта; если её нет, отпечаток страницы запоминается
+     */
+    private Integer detectNearDuplicate(PageDto pageDto, int pageId) {
+        if (pageDto.getSimHash() == null || !crawlerSettings.isNearDuplicateDetection()) {
+            return null;
+        }
+        return simHashIndex(pageDto.getSite()).findOrAdd(pageDto.getSimHash(), pageId);
+    }
+
+    /**
+     * Дубликаты изменившейся или удалённой страницы проверяются заново по сохранённым позициям лемм;
+     * те, что перестали быть дубликатами, попадают в индекс.
+     */
+    private void reindexDuplicates(List<PageDto> duplicates, SiteDto siteDto) {
+        for (PageDto duplicate : duplicates) {
+            Integer duplicateOf = detectNearDuplicate(duplicate, duplicate.getId());
+            pageCRUDService.markDuplicate(duplicate.getId(), duplicateOf);
+            if (duplicateOf == null && duplicate.getPositions() != null) {
+                indexCRUDService.addAll(siteDto.getId(), lemmaCRUDService.saveLemmasListAndCreateIndexes(
+                        TermPositions.decode(duplicate.getPositions()).getCounts(), duplicate.getId(), siteDto.getId()));
+                segmentIndex.pageChanged(siteDto, duplicate.getId());
+            }
+        }
+        if (!duplicates.isEmpty()) {
+            log.debug("Near duplicates rechecked: {}", duplicates.size());
+        }
+    }
+
+    private SimHashIndex simHashIndex(int siteId) {
+        return simHashIndexes.computeIfAbsent(siteId, id -> {
+            SimHashIndex index = new SimHashIndex(crawlerSettings.getMaxSimHashDistance());
+            pageCRUDService.getSimHashesBySiteId(id).forEach(entry -> index.add(entry.getSimHash(), entry.getId()));
+            return index;
+        });
+    }
+
+    private void applyLemmaDelta(int pageId, int siteId, Map<String, Integer> lemmas) {
+        indexCRUDService.flushBulkLoad(siteId);
+        List<IndexDto> oldIndexes = indexCRUDService.getIndexesByPageId(pageId);
+        Map<Integer, String> lemmaNames = lemmaCRUDService.getLemmaNamesByIds(
+                oldIndexes.stream().map(IndexDto::getLemma).toList());
+        Map<String, Integer> addedLemmas = new HashMap<>(lemmas);
+        List<Integer> removedIndexIds = new ArrayList<>();
+        List<Integer> removedLemmaIds = new ArrayList<>();
+        List<IndexDto> rerankedIndexes = new ArrayList<>();
+        for (IndexDto index : oldIndexes) {
+            Integer count = addedLemmas.remove(lemmaNames.get(index.getLemma()));
+            if (count == null) {
+                removedIndexIds.add(index.getId());
+                removedLemmaIds.add(index.getLemma());
+            } else if (count.floatValue() != index.getRank()) {
+                index.setRank(count.floatValue());
+                rerankedIndexes.add(index);
+            }
+        }
+        if (!rerankedIndexes.isEmpty()) {
+            indexCRUDService.upsert(siteId, rerankedIndexes);
+        }
+        lemmaCRUDService.invalidatePostings(siteId, rerankedIndexes.stream().map(IndexDto::getLemma).toList());
+        indexCRUDService.deleteByIds(siteId, removedIndexIds);
+        lemmaCRUDService.removeLemmaOccurrences(siteId, removedLemmaIds);
+        indexCRUDService.addAll(siteId, lemmaCRUDService.saveLemmasListAndCreateIndexes(addedLemmas, pageId, siteId));
+        log.debug("Page {} reindexed: {} lemmas added, {} removed", pageId, addedLemmas.size(), removedLemmaIds.size());
+    }
+}
@@ -0,0 +1,108 @@
+package searchengine.services.implementation;
+
+import lombok.extern.slf4j.Slf4j;
+import searchengine.dto.indexing.FrontierUrlDto;
+import searchengine.services.repositoryServices.FrontierCRUDService;
+import searchengine.services.utilities.UrlFingerprint;
+import searchengine.services.utilities.VisitedUrls;
+
+import java.util.*;
+
+/**
+ * Очередь обхода в таблице frontier: в памяти держатся только отпечатки посещённых URL
+ * и небольшие пачки ожидающих и завершённых ссылок, поэтому прерванный обход можно продолжить.
+ * Пачки выбираются из таблицы в порядке приоритета.
+ */
+@Slf4j
+public class PersistentCrawlFrontier implements CrawlFrontier {
+    private final int siteId;
+    private final int batchSize;
+    private final FrontierCRUDService frontierCRUDService;
+    private final VisitedUrls visitedFingerprints;
+    private final CrawlBudget budget;
+    private final Queue<FrontierUrlDto> queue = new PriorityQueue<>(PRIORITY_ORDER);
+    private final List<FrontierUrlDto> newUrls = new ArrayList<>();
+    private final List<Long> completedIds = new ArrayList<>();
+    private boolean exhausted;
+
+    public PersistentCrawlFrontier(int siteId, int batchSize, FrontierCRUDService frontierCRUDService,
+                                   VisitedUrls visitedFingerprints, CrawlBudget budget) {
+        this.siteId = siteId;
+        this.batchSize = batchSize;
+        this.frontierCRUDService = frontierCRUDService;
+        this.visitedFingerprints = visitedFingerprints;
+        this.budget = budget;
+        frontierCRUDService.requeueTaken(siteId);
+        frontierCRUDService.loadFingerprints(siteId, visitedFingerprints::add);
+        log.info("Frontier of site {} restored with {} known urls", siteId, visitedFingerprints.size());
+    }
+
+    @Override
+    public synchronized boolean offer(String url, int depth) {
+        if (!budget.admits(url, depth)) {
+            return false;
+        }
+        long fingerprint = UrlFingerprint.of(url);
+        if (!visitedFingerprints.add(fingerprint)) {
+            return false;
+        }
+        FrontierUrlDto dto = new FrontierUrlDto();
+        dto.setUrl(url);
+        dto.setFingerprint(fingerprint);
+        dto.setDepth(depth);
+        dto.setPriority(budget.priority(url, depth));
+        newUrls.add(dto);
+        exhausted = false;
+        if (newUrls.size() >= batchSize) {
+            flushNewUrls();
+        }
+        return true;
+    }
+
+    @Override
+    public synchronized FrontierUrlDto poll() {
+        if (queue.isEmpty() && !exhausted) {
+            flushNewUrls();
+            queue.addAll(frontierCRUDService.takePending(siteId, batchSize));
+            exhausted = queue.isEmpty();
+        }
+        return queue.poll();
+    }
+
+    @Override
+    public synchronized void requeue(FrontierUrlDto url) {
+        queue.add(url);
+    }
+
+    @Override
+    public synchronized void complete(FrontierUrlDto url) {
+        if (url.getId() == null) {
+            return;
+        }
+        completedIds.add(url.getId());
+        if (completedIds.size() >= batchSize) {
+            flushCompleted();
+        }
+    }
+
+    @Override
+    public synchronized boolean isEmpty() {
+        return queue.isEmpty() && newUrls.isEmpty() && exhausted;
+    }
+
+    @Override
+    public synchronized void flush() {
+        flushNewUrls();
+        flushCompleted();
+    }
+
+    private void flushNewUrls() {
+        frontierCRUDService.addAll(siteId, newUrls);
+        newUrls.clear();
+    }
+
+    private void flushCompleted() {
+        frontierCRUDService.markDone(completedIds);
+        completedIds.clear();
+    }
+}
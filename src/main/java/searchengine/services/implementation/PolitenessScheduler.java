@@ -0,0 +1,206 @@
+package searchengine.services.implementation;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import searchengine.config.CrawlerSettings;
+import searchengine.config.Site;
+import searchengine.services.utilities.RequestThrottle;
+import searchengine.services.utilities.RobotsTxt;
+
+import java.net.URI;
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Решает, когда можно обращаться к хосту: у каждого хоста свой token bucket
+ * (запросов в секунду), ограничение одновременных запросов, Crawl-delay из robots.txt
+ * и замедление после ответов 429/503.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class PolitenessScheduler implements RequestThrottle {
+    private static final long BUSY_RETRY_MILLIS = 50;
+    private static final double BACKOFF_MULTIPLIER = 2.0;
+    private static final double RECOVERY_MULTIPLIER = 0.9;
+
+    private final CrawlerSettings crawlerSettings;
+    private final Map<String, HostState> hosts = new ConcurrentHashMap<>();
+
+    /**
+     * Повторная регистрация меняет только лимиты: токены и пауза после 429/503 сохраняются,
+     * поэтому запрос robots.txt тоже учитывается в задержке.
+     */
+    public void registerSite(Site site, RobotsTxt robotsTxt) {
+        double requestsPerSecond = site.getRequestsPerSecond() != null
+                ? site.getRequestsPerSecond() : crawlerSettings.getRequestsPerSecond();
+        int maxConcurrency = site.getMaxConcurrency() != null
+                ? site.getMaxConcurrency() : crawlerSettings.getMaxConcurrencyPerHost();
+        Double crawlDelay = robotsTxt.getCrawlDelay();
+        if (crawlDelay != null && crawlDelay > 0) {
+            requestsPerSecond = Math.min(requestsPerSecond, 1 / crawlDelay);
+            maxConcurrency = 1;
+        }
+        String host = hostOf(site.getUrl());
+        hosts.merge(host, new HostState(requestsPerSecond, maxConcurrency, crawlerSettings.getMaxBackoffFactor()),
+                (previous, registered) -> registered.continueFrom(previous));
+        log.info("Politeness for {}: {} requests/sec, {} concurrent requests", host,
+                String.format(Locale.ROOT, "%.2f", requestsPerSecond), maxConcurrency);
+    }
+
+    /**
+     * @return 0, если запрос разрешён (слот занят до вызова release), иначе через сколько миллисекунд повторить попытку
+     */
+    public long tryAcquire(String url) {
+        return hostState(url).tryAcquire(System.currentTimeMillis());
+    }
+
+    /**
+     * Ожидание оформлено как ManagedBlocker: пока рабочий ForkJoinPool ждёт хост,
+     * пул может запустить компенсирующий поток, и остальные задачи не простаивают.
+     */
+    @Override
+    public void acquire(String url) throws InterruptedException {
+        ForkJoinPool.managedBlock(new HostBlocker(url));
+    }
+
+    @Override
+    public void release(String url, int statusCode, String retryAfter) {
+        hostState(url).release(System.currentTimeMillis(), statusCode, parseRetryAfter(retryAfter));
+    }
+
+    private HostState hostState(String url) {
+        return hosts.computeIfAbsent(hostOf(url), host -> new HostState(crawlerSettings.getRequestsPerSecond(),
+                crawlerSettings.getMaxConcurrencyPerHost(), crawlerSettings.getMaxBackoffFactor()));
+    }
+
+    private static String hostOf(String url) {
+        try {
+            String host = URI.create(url).getHost();
+            return host == null ? url : host.toLowerCase(Locale.ROOT);
+        } catch (IllegalArgumentException e) {
+            return url;
+        }
+    }
+
+    /**
+     * Retry-After задаётся числом секунд или HTTP-датой.
+     */
+    static long parseRetryAfter(String retryAfter) {
+        if (retryAfter == null || retryAfter.isBlank()) {
+            return 0;
+        }
+        String value = retryAfter.trim();
+        try {
+            return Math.max(0, Long.parseLong(value) * 1000);
+        } catch (NumberFormatException ignored) {
+        }
+        try {
+            Instant until = ZonedDateTime.parse(value, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant();
+            return Math.max(0, until.toEpochMilli() - System.currentTimeMillis());
+        } catch (DateTimeParseException e) {
+            log.debug("Unparseable Retry-After header: {}", value);
+            return 0;
+        }
+    }
+
+    /**
+     * isReleasable занимает слот хоста, если он свободен, поэтому после true ожидание заканчивается.
+     */
+    private class HostBlocker implements ForkJoinPool.ManagedBlocker {
+        private final String url;
+        private long wait;
+
+        HostBlocker(String url) {
+            this.url = url;
+        }
+
+        @Override
+        public boolean isReleasable() {
+            wait = tryAcquire(url);
+            return wait == 0;
+        }
+
+        @Override
+        public boolean block() throws InterruptedException {
+            Thread.sleep(Math.max(1, wait));
+            return isReleasable();
+        }
+    }
+
+    private static class HostState {
+        private final double requestsPerSecond;
+        private final int maxConcurrency;
+        private final double maxBackoffFactor;
+        private final double capacity;
+        private double tokens;
+        private long lastRefill;
+        private int active;
+        private double backoffFactor = 1.0;
+        private long pausedUntil;
+
+        HostState(double requestsPerSecond, int maxConcurrency, double maxBackoffFactor) {
+            this.requestsPerSecond = requestsPerSecond;
+            this.maxConcurrency = Math.max(1, maxConcurrency);
+            this.maxBackoffFactor = Math.max(1.0, maxBackoffFactor);
+            this.capacity = Math.max(1.0, Math.min(this.maxConcurrency, requestsPerSecond));
+            this.tokens = 1.0;
+            this.lastRefill = System.currentTimeMillis();
+        }
+
+        HostState continueFrom(HostState previous) {
+            synchronized (previous) {
+                tokens = Math.min(capacity, previous.tokens);
+                lastRefill = previous.lastRefill;
+                active = previous.active;
+                backoffFactor = Math.min(maxBackoffFactor, previous.backoffFactor);
+                pausedUntil = previous.pausedUntil;
+            }
+            return this;
+        }
+
+        synchronized long tryAcquire(long now) {
+            if (now < pausedUntil) {
+                return pausedUntil - now;
+            }
+            refill(now);
+            if (active >= maxConcurrency) {
+                return BUSY_RETRY_MILLIS;
+            }
+            if (tokens < 1.0) {
+                return Math.max(1, (long) Math.ceil((1.0 - tokens) * 1000 / currentRate()));
+            }
+            tokens -= 1.0;
+            active++;
+            return 0;
+        }
+
+        synchronized void release(long now, int statusCode, long retryAfterMillis) {
+            active = Math.max(0, active - 1);
+            if (statusCode == 429 || statusCode == 503) {
+                backoffFactor = Math.min(maxBackoffFactor, backoffFactor * BACKOFF_MULTIPLIER);
+                tokens = 0;
+                lastRefill = now;
+                pausedUntil = Math.max(pausedUntil, now + retryAfterMillis);
+            } else if (backoffFactor > 1.0) {
+                backoffFactor = Math.max(1.0, backoffFactor * RECOVERY_MULTIPLIER);
+            }
+        }
+
+        private void refill(long now) {
+            tokens = Math.min(capacity, tokens + (now - lastRefill) * currentRate() / 1000);
+            lastRefill = now;
+        }
+
+        private double currentRate() {
+            return requestsPerSecond / backoffFactor;
+        }
+    }
+}
@@ -2,7 +2,6 @@ package searchengine.services.implementation;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.jsoup.Jsoup;
 import org.springframework.stereotype.Service;
 import searchengine.config.Site;
 import searchengine.config.SitesList;
@@ -15,6 +14,10 @@ import searchengine.exceptions.searchingExceptions.EmptyIndexListException;
 import searchengine.exceptions.searchingExceptions.EmptySearchQueryException;
 import searchengine.exceptions.searchingExceptions.IncorrectSearchQueryException;
 import searchengine.services.utilities.LemmaFinder;
+import searchengine.services.utilities.ParsedPage;
+import searchengine.services.utilities.Postings;
+import searchengine.services.utilities.SearchQuery;
+import searchengine.services.utilities.TermPositions;
 import searchengine.services.api.SearchingService;
 import searchengine.services.repositoryServices.IndexCRUDService;
 import searchengine.services.repositoryServices.LemmaCRUDService;
@@ -32,7 +35,9 @@ public class SearchingServiceImpl implements SearchingService {
     private final IndexCRUDService indexCRUDService;
     private final PageCRUDService pageCRUDService;
     private final SiteCRUDService siteCRUDService;
+    private final SegmentIndex segmentIndex;
     private final SitesList sites;
+    private final LemmaFinder lemmaFinder;
     private final List<SearchResult> data = new CopyOnWriteArrayList<>();
 
     @Override
@@ -62,33 +67,36 @@ public class SearchingServiceImpl implements SearchingService {
             throw new IncorrectSearchQueryException();
         }
 
-        processSitesParallel(sitesList, notCommonLemmas);
+        processSitesParallel(sitesList, notCommonLemmas, parseOperators(query));
 
         data.sort(Comparator.comparing(SearchResult::getRelevance).reversed());
         return getPaginatedResponse(offset, limit);
     }
 
-    private void processSitesParallel(List<String> sitesList, List<String> notCommonLemmas) {
+    private void processSitesParallel(List<String> sitesList, List<String> notCommonLemmas, SearchQuery searchQuery) {
         ExecutorService executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
         List<CompletableFuture<Void>> futures = new ArrayList<>();
         for (String site : sitesList) {
-            futures.add(processSiteAsync(site, notCommonLemmas, executor));
+            futures.add(processSiteAsync(site, notCommonLemmas, searchQuery, executor));
         }
         CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
 
     }
 
-    private CompletableFuture<Void> processSiteAsync(String site, List<String> notCommonLemmas, ExecutorService executor) {
+    private CompletableFuture<Void> processSiteAsync(String site, List<String> notCommonLemmas, SearchQuery searchQuery,
+                                                     ExecutorService executor) {
         return CompletableFuture.runAsync(() -> {
             try {
-                SiteDto siteDto = siteCRUDService.getByUrl(site);
+                SiteDto siteDto = siteCRUDService.getActiveByUrl(site);
                 if (siteDto == null) {
                     log.warn("SiteDto is null for site: {}", site);
                     return;
                 }
-                List<LemmaDto> sortedLemmaDtos = lemmaCRUDService.getSortedLemmaDtos(notCommonLemmas, siteDto.getId());
-                List<PageDto> relevantPages = findRelevantPages(sortedLemmaDtos, siteDto);
-                calculateRelevance(relevantPages, sortedLemmaDtos, siteDto);
+                if (segmentIndex.hasSegments(siteDto.getId())) {
+                    searchSegments(notCommonLemmas, searchQuery, siteDto);
+                    return;
+                }
+                searchDatabase(notCommonLemmas, searchQuery, siteDto);
             } catch (Exception e) {
                 log.error("Error processing site: {}", site, e);
             }
@@ -97,7 +105,6 @@ public class SearchingServiceImpl implements SearchingService {
 
     private List<String> extractNotCommonLemmas(String query) {
         try {
-            LemmaFinder lemmaFinder = LemmaFinder.getInstance();
             Set<String> lemmas = lemmaFinder.getLemmaSet(query);
             return lemmaCRUDService.removeCommonLemmas(new ArrayList<>(lemmas));
         } catch (Exception e) {
@@ -106,6 +113,15 @@ public class SearchingServiceImpl implements SearchingService {
         }
     }
 
+    private SearchQuery parseOperators(String query) {
+        try {
+            return SearchQuery.parse(query, lemmaFinder);
+        } catch (Exception e) {
+            log.warn("Error parsing query operators: {}", e.getMessage());
+            return SearchQuery.EMPTY;
+        }
+    }
+
     private SearchingResponse getPaginatedResponse(int offset, int limit) {
         int start = Math.min(offset, data.size());
         int end = Math.min(start + limit, data.size());
@@ -113,46 +129,85 @@ public class SearchingServiceImpl implements SearchingService {
         return createSuccessfulResponse(data.size(), paginatedResults);
     }
 
-    private List<PageDto> findRelevantPages(List<LemmaDto> sortedLemmaDtos, SiteDto siteDto) {
-        if (sortedLemmaDtos.isEmpty()) {
-            return Collections.emptyList();
+    /**
+     * Поиск по сжатым спискам страниц из lemma.postings; для лемм, у которых список ещё не собран,
+     * страницы читаются из index_table.
+     */
+    private void searchDatabase(List<String> notCommonLemmas, SearchQuery searchQuery, SiteDto siteDto) {
+        List<LemmaDto> lemmas = lemmaCRUDService.getSortedLemmaDtos(notCommonLemmas, siteDto.getId());
+        if (lemmas.isEmpty()) {
+            return;
         }
-        List<LemmaDto> siteLemmas = sortedLemmaDtos.stream()
-                .filter(lemmaDto -> siteDto.getId().equals(lemmaDto.getSite()))
-                .toList();
-        if (siteLemmas.isEmpty()) {
-            return Collections.emptyList();
+        Map<Integer, Postings> storedPostings = lemmaCRUDService.getPostings(siteDto.getId(),
+                lemmas.stream().map(LemmaDto::getId).toList());
+        List<Postings> postingsList = new ArrayList<>();
+        for (LemmaDto lemma : lemmas) {
+            Postings postings = storedPostings.get(lemma.getId());
+            postingsList.add(postings != null ? postings : indexCRUDService.getPostings(siteDto.getId(), lemma.getId()));
         }
-        return findPagesByCommonLemmas(siteLemmas);
+        addMatches(postingsList, lemmas, searchQuery, siteDto);
     }
 
-    private List<PageDto> findPagesByCommonLemmas(List<LemmaDto> lemmas) {
-        List<Integer> relevantPageIds = new ArrayList<>(indexCRUDService.getPageIdsByLemmaId(lemmas.get(0).getId()));
-
-        for (int i = 1; i < lemmas.size(); i++) {
-            Set<Integer> pageIds = new HashSet<>(indexCRUDService.getPageIdsByLemmaId(lemmas.get(i).getId()));
-            relevantPageIds.retainAll(pageIds);
-            if (relevantPageIds.isEmpty()) {
-                return Collections.emptyList();
+    /**
+     * Поиск по сегментам: списки страниц лемм читаются из файлов, из базы загружаются только найденные страницы.
+     */
+    private void searchSegments(List<String> notCommonLemmas, SearchQuery searchQuery, SiteDto siteDto) {
+        List<LemmaDto> lemmas = new ArrayList<>();
+        List<Postings> postingsList = new ArrayList<>();
+        for (String lemma : notCommonLemmas) {
+            Postings postings = segmentIndex.postings(siteDto.getId(), lemma);
+            if (postings.size() > 0) {
+                LemmaDto lemmaDto = new LemmaDto();
+                lemmaDto.setSite(siteDto.getId());
+                lemmaDto.setLemma(lemma);
+                lemmaDto.setFrequency(postings.size());
+                lemmas.add(lemmaDto);
+                postingsList.add(postings);
             }
         }
-        return pageCRUDService.findPagesByIds(relevantPageIds);
+        if (!postingsList.isEmpty()) {
+            addMatches(postingsList, lemmas, searchQuery, siteDto);
+        }
     }
 
-    private void calculateRelevance(List<PageDto> relevantPages, List<LemmaDto> lemmas, SiteDto siteDto) {
+    private void addMatches(List<Postings> postingsList, List<LemmaDto> lemmas, SearchQuery searchQuery, SiteDto siteDto) {
+        postingsList.sort(Comparator.comparingInt(Postings::size));
+        Postings matches = postingsList.get(0);
+        for (int i = 1; i < postingsList.size() && matches.size() > 0; i++) {
+            matches = matches.intersect(postingsList.get(i));
+        }
+        Map<Integer, Float> relevanceByPage = new HashMap<>();
+        for (int i = 0; i < matches.size(); i++) {
+            relevanceByPage.put(matches.getPageIds()[i], matches.getRanks()[i]);
+        }
+        addResults(pageCRUDService.findPagesByIds(new ArrayList<>(relevanceByPage.keySet())), relevanceByPage,
+                lemmas, searchQuery, siteDto);
+    }
+
+    /**
+     * Страницы, на которых не выполняются фразы и NEAR из запроса, в выдачу не попадают.
+     */
+    private void addResults(List<PageDto> relevantPages, Map<Integer, Float> relevanceByPage,
+                            List<LemmaDto> lemmas, SearchQuery searchQuery, SiteDto siteDto) {
         float maxRelevance = 0f;
         String site = siteDto.getUrl();
         for (PageDto page : relevantPages) {
-            float relevance = 0f;
-            for (LemmaDto lemma : lemmas) {
-                relevance += indexCRUDService.getIndexByLemmaIdAndPageId(lemma.getId(), page.getId()).getRank();
+            fillLegacyPage(page);
+            TermPositions positions = getPositions(page);
+            int anchor = -1;
+            if (searchQuery.hasConstraints()) {
+                anchor = searchQuery.firstMatch(positions);
+                if (anchor < 0) {
+                    continue;
+                }
             }
+            float relevance = relevanceByPage.get(page.getId());
             SearchResult searchResult = new SearchResult();
             searchResult.setSite(site.substring(0, site.length() - 1));
             searchResult.setSiteName(siteDto.getName());
             searchResult.setUri(page.getPath());
-            searchResult.setTitle(getTitle(page));
-            SnippetGenerator snippetGenerator = new SnippetGenerator(page, lemmas);
+            searchResult.setTitle(page.getTitle());
+            SnippetGenerator snippetGenerator = new SnippetGenerator(page, positions, lemmas, anchor);
             searchResult.setSnippet(snippetGenerator.generateSnippet());
             searchResult.setRelevance(relevance);
             data.add(searchResult);
@@ -165,8 +220,30 @@ public class SearchingServiceImpl implements SearchingService {
         }
     }
 
-    private String getTitle(PageDto pageDto) {
-        return Jsoup.parse(pageDto.getContent()).title();
+    /**
+     * Страницы, проиндексированные до появления колонок title и text, разбираются один раз при выдаче.
+     */
+    private void fillLegacyPage(PageDto pageDto) {
+        if (pageDto.getText() == null) {
+            ParsedPage page = ParsedPage.parse(pageCRUDService.getBody(pageDto), "");
+            pageDto.setTitle(page.getTitle());
+            pageDto.setText(page.getText());
+        }
+    }
+
+    /**
+     * Для страниц, проиндексированных до появления колонки positions, позиции лемм собираются по тексту.
+     */
+    private TermPositions getPositions(PageDto pageDto) {
+        if (pageDto.getPositions() != null) {
+            return TermPositions.decode(pageDto.getPositions());
+        }
+        try {
+            return lemmaFinder.collectPositions(pageDto.getText());
+        } catch (Exception e) {
+            log.warn("Lemma positions of page {} were not collected: {}", pageDto.getPath(), e.getMessage());
+            return TermPositions.EMPTY;
+        }
     }
 
     private SearchingResponse createSuccessfulResponse(int count, List<SearchResult> data) {
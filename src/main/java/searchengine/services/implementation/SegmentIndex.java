@@ -0,0 +1,281 @@
+package searchengine.services.implementation;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import searchengine.config.SearchBackend;
+import searchengine.config.SearchSettings;
+import searchengine.dto.indexing.SiteDto;
+import searchengine.services.repositoryServices.IndexCRUDService;
+import searchengine.services.utilities.Postings;
+import searchengine.services.utilities.Segment;
+import searchengine.services.utilities.SegmentWriter;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Индекс для поиска в неизменяемых сегментах на диске. Источником данных остаётся PostgreSQL:
+ * после индексации сайта в фоне пишется полный сегмент или сегмент с изменёнными страницами,
+ * который заменяет их в более старых сегментах. Когда сегментов сайта становится больше
+ * maxSegmentsPerSite, они сливаются в один.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class SegmentIndex {
+    private static final Pattern FILE_NAME = Pattern.compile("site-(\\d+)-(\\d+)\\.seg");
+
+    private final SearchSettings searchSettings;
+    private final IndexCRUDService indexCRUDService;
+    private final Map<Integer, List<Segment>> segments = new ConcurrentHashMap<>();
+    private final Map<Integer, Set<Integer>> changedPages = new ConcurrentHashMap<>();
+    private final ExecutorService writer = Executors.newSingleThreadExecutor();
+    private final AtomicLong sequence = new AtomicLong(System.currentTimeMillis());
+
+    public boolean isEnabled() {
+        return searchSettings.getBackend() == SearchBackend.SEGMENTS;
+    }
+
+    public boolean hasSegments(int siteId) {
+        return isEnabled() && !segmentsOf(siteId).isEmpty();
+    }
+
+    /**
+     * Запоминает страницу, строки индекса которой изменились после записи сегментов сайта.
+     */
+    public void pageChanged(SiteDto siteDto, int pageId) {
+        if (siteDto.isActive() && hasSegments(siteDto.getId())) {
+            changedPages.computeIfAbsent(siteDto.getId(), id -> ConcurrentHashMap.newKeySet()).add(pageId);
+        }
+    }
+
+    /**
+     * В фоне переносит изменения активного поколения сайта в сегменты.
+     */
+    public void commit(SiteDto siteDto) {
+        if (!isEnabled() || !siteDto.isActive()) {
+            return;
+        }
+        int siteId = siteDto.getId();
+        writer.execute(() -> {
+            try {
+                if (segmentsOf(siteId).isEmpty()) {
+                    changedPages.remove(siteId);
+                    writeSegment(siteId, null);
+                } else {
+                    Set<Integer> changed = changedPages.remove(siteId);
+                    if (changed != null && !changed.isEmpty()) {
+                        writeSegment(siteId, new ArrayList<>(changed));
+                    }
+                }
+                if (segmentsOf(siteId).size() > searchSettings.getMaxSegmentsPerSite()) {
+                    merge(siteId);
+                }
+            } catch (Exception e) {
+                log.error("Segments of site {} were not written: {}", siteId, e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Удаляет сегменты удалённых поколений сайтов.
+     */
+    public void dropSites(Collection<Integer> siteIds) {
+        if (!isEnabled() || siteIds.isEmpty()) {
+            return;
+        }
+        Set<Integer> dropped = Set.copyOf(siteIds);
+        writer.execute(() -> {
+            Set<Path> retired = new HashSet<>();
+            for (Integer siteId : dropped) {
+                changedPages.remove(siteId);
+                List<Segment> siteSegments = segments.remove(siteId);
+                if (siteSegments != null) {
+                    siteSegments.forEach(segment -> {
+                        retired.add(segment.getPath());
+                        segment.retire();
+                    });
+                }
+            }
+            for (Path file : listFiles()) {
+                Matcher matcher = FILE_NAME.matcher(file.getFileName().toString());
+                if (matcher.matches() && dropped.contains(Integer.parseInt(matcher.group(1))) && !retired.contains(file)) {
+                    delete(file);
+                }
+            }
+        });
+    }
+
+    /**
+     * @return страницы леммы по всем сегментам сайта с учётом замен
+     */
+    public Postings postings(int siteId, String lemma) {
+        List<Segment> siteSegments = acquire(siteId);
+        try {
+            return collect(siteSegments, lemma);
+        } finally {
+            siteSegments.forEach(Segment::release);
+        }
+    }
+
+    /**
+     * Берёт ссылки на текущие сегменты сайта. Если слияние успело вывести один из них,
+     * берётся новый список.
+     */
+    private List<Segment> acquire(int siteId) {
+        while (true) {
+            List<Segment> siteSegments = segmentsOf(siteId);
+            List<Segment> acquired = new ArrayList<>(siteSegments.size());
+            for (Segment segment : siteSegments) {
+                if (!segment.retain()) {
+                    break;
+                }
+                acquired.add(segment);
+            }
+            if (acquired.size() == siteSegments.size()) {
+                return acquired;
+            }
+            acquired.forEach(Segment::release);
+        }
+    }
+
+    private Postings collect(List<Segment> siteSegments, String lemma) {
+        int[] pageIds = new int[16];
+        float[] ranks = new float[16];
+        int size = 0;
+        for (int i = siteSegments.size() - 1; i >= 0; i--) {
+            Postings postings = siteSegments.get(i).postings(lemma);
+            if (postings == null) {
+                continue;
+            }
+            for (int j = 0; j < postings.size(); j++) {
+                int pageId = postings.getPageIds()[j];
+                if (isReplaced(siteSegments, i, pageId)) {
+                    continue;
+                }
+                if (size == pageIds.length) {
+                    pageIds = Arrays.copyOf(pageIds, size * 2);
+                    ranks = Arrays.copyOf(ranks, size * 2);
+                }
+                pageIds[size] = pageId;
+                ranks[size++] = postings.getRanks()[j];
+            }
+        }
+        return size == 0 ? Postings.EMPTY : Postings.sorted(pageIds, ranks, size);
+    }
+
+    private static boolean isReplaced(List<Segment> siteSegments, int segmentIndex, int pageId) {
+        for (int i = segmentIndex + 1; i < siteSegments.size(); i++) {
+            if (siteSegments.get(i).replaces(pageId)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param pageIds страницы для сегмента изменений или null для полного сегмента сайта
+     */
+    private void writeSegment(int siteId, List<Integer> pageIds) throws IOException {
+        Path file = newSegmentFile(siteId);
+        int[] replaced = pageIds == null ? new int[0] : pageIds.stream().mapToInt(Integer::intValue).toArray();
+        SegmentWriter segmentWriter = new SegmentWriter(file, replaced);
+        try {
+            indexCRUDService.forEachPosting(siteId, pageIds, segmentWriter::add);
+        } catch (RuntimeException e) {
+            segmentWriter.abort();
+            throw e;
+        }
+        segmentWriter.finish();
+        Segment segment = Segment.open(file);
+        List<Segment> previous = segmentsOf(siteId);
+        if (pageIds == null) {
+            segments.put(siteId, List.of(segment));
+            previous.forEach(Segment::retire);
+        } else {
+            List<Segment> updated = new ArrayList<>(previous);
+            updated.add(segment);
+            segments.put(siteId, List.copyOf(updated));
+        }
+        log.info("Segment {} written for site {}: {} lemmas", file.getFileName(), siteId, segment.getTermCount());
+    }
+
+    private void merge(int siteId) throws IOException {
+        List<Segment> siteSegments = segmentsOf(siteId);
+        Set<String> terms = new TreeSet<>();
+        siteSegments.forEach(segment -> terms.addAll(segment.getTerms()));
+        Path file = newSegmentFile(siteId);
+        SegmentWriter segmentWriter = new SegmentWriter(file, new int[0]);
+        try {
+            for (String term : terms) {
+                segmentWriter.add(term, collect(siteSegments, term));
+            }
+        } catch (IOException | RuntimeException e) {
+            segmentWriter.abort();
+            throw e;
+        }
+        segmentWriter.finish();
+        segments.put(siteId, List.of(Segment.open(file)));
+        siteSegments.forEach(Segment::retire);
+        log.info("{} segments of site {} merged into {}", siteSegments.size(), siteId, file.getFileName());
+    }
+
+    private List<Segment> segmentsOf(int siteId) {
+        return segments.computeIfAbsent(siteId, this::loadSegments);
+    }
+
+    private List<Segment> loadSegments(int siteId) {
+        TreeMap<Long, Segment> loaded = new TreeMap<>();
+        for (Path file : listFiles()) {
+            Matcher matcher = FILE_NAME.matcher(file.getFileName().toString());
+            if (!matcher.matches() || Integer.parseInt(matcher.group(1)) != siteId) {
+                continue;
+            }
+            try {
+                long number = Long.parseLong(matcher.group(2));
+                loaded.put(number, Segment.open(file));
+                sequence.accumulateAndGet(number, Math::max);
+            } catch (IOException e) {
+                log.warn("Segment {} could not be opened: {}", file, e.getMessage());
+            }
+        }
+        return List.copyOf(loaded.values());
+    }
+
+    private Path newSegmentFile(int siteId) throws IOException {
+        Path directory = Path.of(searchSettings.getSegmentDirectory());
+        Files.createDirectories(directory);
+        return directory.resolve("site-" + siteId + "-" + sequence.incrementAndGet() + ".seg");
+    }
+
+    private List<Path> listFiles() {
+        Path directory = Path.of(searchSettings.getSegmentDirectory());
+        if (!Files.isDirectory(directory)) {
+            return List.of();
+        }
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.toList();
+        } catch (IOException e) {
+            log.warn("Segment directory {} could not be read: {}", directory, e.getMessage());
+            return List.of();
+        }
+    }
+
+    private static void delete(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            log.warn("Segment {} could not be deleted: {}", file, e.getMessage());
+        }
+    }
+}
@@ -3,25 +3,47 @@ package searchengine.services.implementation;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
-import searchengine.config.ConnectionProfile;
+import searchengine.config.CrawlerEngine;
+import searchengine.config.CrawlerSettings;
+import searchengine.config.FrontierMode;
+import searchengine.config.IngestionSettings;
+import searchengine.config.VisitedTracking;
 import searchengine.config.Site;
 import searchengine.config.SitesList;
 import searchengine.dto.indexing.*;
 import searchengine.exceptions.indexingExceptions.*;
 import searchengine.model.Status;
-import searchengine.services.utilities.LemmaFinder;
+import searchengine.services.utilities.FetchResult;
+import searchengine.services.utilities.FingerprintSet;
+import searchengine.services.utilities.PageFetcher;
+import searchengine.services.utilities.RobotsTxt;
+import searchengine.services.utilities.ScalableBloomFilter;
+import searchengine.services.utilities.SitemapReader;
+import searchengine.services.utilities.UrlCanonicalizer;
+import searchengine.services.utilities.VisitedUrls;
 import searchengine.services.api.SiteIndexingService;
+import searchengine.services.repositoryServices.FrontierCRUDService;
 import searchengine.services.repositoryServices.IndexCRUDService;
-import searchengine.services.repositoryServices.LemmaCRUDService;
 import searchengine.services.repositoryServices.PageCRUDService;
 import searchengine.services.repositoryServices.SiteCRUDService;
 import searchengine.services.utilities.UrlConnector;
 
+import java.io.IOException;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
 import java.time.Instant;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 @Service
 @RequiredArgsConstructor
@@ -29,13 +51,32 @@ import java.util.concurrent.atomic.AtomicBoolean;
 public class SiteIndexingServiceImpl implements SiteIndexingService {
 
     private final SitesList sites;
-    private final ConnectionProfile connectionProfile;
+    private final PageFetcher pageFetcher;
+    private final CrawlerSettings crawlerSettings;
+    private final IngestionSettings ingestionSettings;
+    private final OfflineIngestor offlineIngestor;
+    private final PageIndexer pageIndexer;
+    private final PolitenessScheduler politenessScheduler;
+    private final UrlCanonicalizer urlCanonicalizer;
     private final SiteCRUDService siteCRUDService;
     private final PageCRUDService pageCRUDService;
-    private final LemmaCRUDService lemmaCRUDService;
     private final IndexCRUDService indexCRUDService;
+    private final FrontierCRUDService frontierCRUDService;
+    private final SegmentIndex segmentIndex;
     private ExecutorService executorService;
     private final AtomicBoolean isIndexing = new AtomicBoolean(false);
+    private final Set<AsyncSiteCrawler> activeCrawlers = ConcurrentHashMap.newKeySet();
+    private final ExecutorService generationCleaner = Executors.newSingleThreadExecutor();
+    /**
+     * Блокировки поколений по адресу сайта: обход и индексация страницы берут блокировку на чтение,
+     * удаление старых поколений — на запись, поэтому ждут друг друга только операции одного сайта.
+     */
+    private final Map<String, ReadWriteLock> generationLocks = new ConcurrentHashMap<>();
+    /**
+     * Общая очистка page_body не ждёт: если какой-либо сайт сейчас пишет страницы, она пропускается
+     * до следующего удаления поколений.
+     */
+    private final ReadWriteLock bodySweepLock = new ReentrantReadWriteLock();
 
     @Override
     public IndexingResponse startIndexing() {
@@ -51,7 +92,6 @@ public class SiteIndexingServiceImpl implements SiteIndexingService {
         }
 
         SiteMapper.requestStart();
-        SiteMapper.clearVisitedUrls();
 
         executorService = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
         sitesList.forEach(site -> executorService.submit(() -> indexSite(site)));
@@ -67,9 +107,11 @@ public class SiteIndexingServiceImpl implements SiteIndexingService {
             log.warn("Indexing has not been started yet");
             throw new IndexingNotStartedException();
         }
+        isIndexing.set(false);
         SiteMapper.requestStop();
+        activeCrawlers.forEach(AsyncSiteCrawler::stop);
+        offlineIngestor.requestStop();
         executorService.shutdownNow();
-        isIndexing.set(false);
         log.info("Indexing was stopped by user");
         return createSuccessfulResponse();
     }
@@ -85,51 +127,185 @@ public class SiteIndexingServiceImpl implements SiteIndexingService {
             throw new PageIsNotRelatedToSpecifiedSitesException();
         }
         Site site = getSiteFromUrl(url);
-        if (!isSiteAccessible(site)) {
-            log.error("This page is unavailable.");
-            throw new PageIsNotAvailableException();
+        String canonicalUrl = urlCanonicalizer.canonicalize(url);
+        if (canonicalUrl != null && canonicalUrl.startsWith(site.getUrl())) {
+            url = canonicalUrl;
+        }
+        UrlConnector urlConnector = fetchPage(url);
+        Lock generationLock = generationLock(site.getUrl()).readLock();
+        generationLock.lock();
+        bodySweepLock.readLock().lock();
+        try {
+            SiteDto siteDto = siteCRUDService.getActiveByUrl(site.getUrl());
+            if (siteDto == null) {
+                siteDto = siteCRUDService.getByUrl(site.getUrl());
+            }
+            if (siteDto == null) {
+                log.error("Site {} has not been indexed yet", site.getUrl());
+                throw new SiteIsNotIndexedException();
+            }
+            try {
+                pageIndexer.reindexPage(url, urlConnector.getPage(), urlConnector.getStatusCode(), siteDto);
+                segmentIndex.commit(siteDto);
+                log.info("Indexing was completed for the page: {}", url);
+                return createSuccessfulResponse();
+            } catch (Exception e) {
+                log.info("Error indexing page {} : {}", url, e.getMessage());
+                throw new IndexingRuntimeException();
+            }
+        } finally {
+            bodySweepLock.readLock().unlock();
+            generationLock.unlock();
+        }
+    }
+
+    @Override
+    public IndexingResponse startIngestion(String path) {
+        if (isIndexing.get()) {
+            log.error("Indexing is already in progress");
+            throw new IndexingInProcessException();
+        }
+        Path root;
+        Path source;
+        try {
+            root = Path.of(ingestionSettings.getRootDirectory()).toRealPath();
+            source = root.resolve(path).toRealPath();
+        } catch (IOException | InvalidPathException e) {
+            log.error("Ingestion path {} is missing: {}", path, e.getMessage());
+            throw new IngestionPathException();
+        }
+        if (!source.startsWith(root)) {
+            log.error("Ingestion path {} is outside of {}", path, root);
+            throw new IngestionPathException();
         }
+        isIndexing.set(true);
+        executorService = Executors.newSingleThreadExecutor();
+        executorService.submit(() -> ingest(source));
+        executorService.shutdown();
+        log.info("Ingestion started from {}", source);
+        return createSuccessfulResponse();
+    }
+
+    private void ingest(Path source) {
+        Map<String, SiteDto> ingestedSites = new ConcurrentHashMap<>();
+        Set<Integer> closedSites = new HashSet<>();
+        List<Lock> generationLocks = sites.getSites().stream()
+                .map(site -> generationLock(site.getUrl()).readLock())
+                .toList();
+        generationLocks.forEach(Lock::lock);
+        bodySweepLock.readLock().lock();
+        boolean ingested = false;
         try {
-            String pageUrl = url.substring(site.getUrl().length() - 1);
-            int siteId = siteCRUDService.getByUrl(site.getUrl()).getId();
-            PageDto pageDto = pageCRUDService.getByUrlAndSiteId(pageUrl, siteId);
-            if (pageDto != null) {
-                lemmaCRUDService.deleteLemmasByIds(indexCRUDService.getLemmaIdsByPageId(pageDto.getId()));
-                pageCRUDService.deleteById(pageDto.getId());
-                log.warn("The page {} already exists in the database", url);
-            }
-            UrlConnector urlConnector = new UrlConnector(url, connectionProfile);
-            pageDto = pageCRUDService.createPageDto(url, urlConnector.getDocument(), urlConnector.getStatusCode(), siteCRUDService.getByUrl(site.getUrl()));
-            pageCRUDService.create(pageDto);
-
-            LemmaFinder lemmaFinder = LemmaFinder.getInstance();
-            Map<String, Integer> lemmas = lemmaFinder.collectLemmas(urlConnector.getDocument().text());
-            int pageId = pageCRUDService.getByUrlAndSiteId(pageDto.getPath(), pageDto.getSite()).getId();
-            List<IndexDto> indexList = lemmaCRUDService.saveLemmasListAndCreateIndexes(lemmas, pageId, siteId);
-            indexCRUDService.addAll(indexList);
-            log.info("Indexing was completed for the page: {}", url);
-            return createSuccessfulResponse();
+            offlineIngestor.ingest(source, url -> resolveIngestionSite(url, ingestedSites));
+            closeIngestedSites(ingestedSites, closedSites);
+            Status status = isIndexing.get() ? Status.INDEXED : Status.FAILED;
+            String error = isIndexing.get() ? null : "Индексация остановлена пользователем";
+            ingestedSites.keySet().forEach(siteUrl -> updateSiteStatus(siteUrl, status, error));
+            ingested = status == Status.INDEXED;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            ingestedSites.keySet().forEach(siteUrl ->
+                    updateSiteStatus(siteUrl, Status.FAILED, "Индексация остановлена пользователем"));
         } catch (Exception e) {
-            log.info("Error indexing page {} : {]", url + e.getMessage());
-            throw new IndexingRuntimeException();
+            log.error("Error ingesting {}: {}", source, e.getMessage());
+            ingestedSites.keySet().forEach(siteUrl ->
+                    updateSiteStatus(siteUrl, Status.FAILED, "Ошибка загрузки архива: " + e.getMessage()));
+        } finally {
+            try {
+                closeIngestedSites(ingestedSites, closedSites);
+            } catch (Exception e) {
+                log.error("Ingested sites were not closed: {}", e.getMessage());
+            }
+            bodySweepLock.readLock().unlock();
+            generationLocks.forEach(Lock::unlock);
         }
+        try {
+            if (ingested) {
+                ingestedSites.keySet().forEach(this::activateGeneration);
+            }
+        } catch (Exception e) {
+            log.error("Ingested sites were not activated: {}", e.getMessage());
+        } finally {
+            isIndexing.set(false);
+        }
+    }
+
+    /**
+     * Записывает накопленные частоты лемм и списки страниц. Ошибка прерывает загрузку до того,
+     * как сайты будут отмечены проиндексированными.
+     */
+    private void closeIngestedSites(Map<String, SiteDto> ingestedSites, Set<Integer> closedSites) {
+        for (SiteDto siteDto : ingestedSites.values()) {
+            if (!closedSites.contains(siteDto.getId())) {
+                pageIndexer.forgetSite(siteDto.getId());
+                segmentIndex.commit(siteDto);
+                closedSites.add(siteDto.getId());
+            }
+        }
+    }
+
+    private SiteDto resolveIngestionSite(String url, Map<String, SiteDto> ingestedSites) {
+        Site site = sites.getSites().stream().filter(item -> url.startsWith(item.getUrl())).findFirst().orElse(null);
+        if (site == null) {
+            return null;
+        }
+        return ingestedSites.computeIfAbsent(site.getUrl(), siteUrl -> {
+            if (siteCRUDService.getByUrl(siteUrl) == null) {
+                siteCRUDService.create(siteCRUDService.createSiteDto(site));
+            } else {
+                updateSiteStatus(siteUrl, Status.INDEXING, null);
+            }
+            SiteDto siteDto = siteCRUDService.getByUrl(siteUrl);
+            pageIndexer.openSite(siteDto.getId());
+            return siteDto;
+        });
+    }
+
+    private UrlConnector fetchPage(String url) {
+        try {
+            UrlConnector urlConnector = new UrlConnector(url, pageFetcher);
+            if (urlConnector.getStatusCode() < 400 && urlConnector.getPage() != null) {
+                return urlConnector;
+            }
+            log.error("This page is unavailable. Status code: {}", urlConnector.getStatusCode());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            log.error("This page is unavailable: {}", e.getMessage());
+        }
+        throw new PageIsNotAvailableException();
     }
 
     private void indexSite(Site site) {
         isIndexing.set(true);
+        Lock generationLock = generationLock(site.getUrl()).readLock();
+        generationLock.lock();
+        bodySweepLock.readLock().lock();
+        boolean completed = false;
         try {
-            siteCRUDService.deleteByUrl(site.getUrl());
-            SiteDto siteDto = siteCRUDService.createSiteDto(site);
-            siteCRUDService.create(siteDto);
-            if (isSiteAccessible(site)) {
+            SiteDto latestSite = siteCRUDService.getByUrl(site.getUrl());
+            SiteDto activeSite = siteCRUDService.getActiveByUrl(site.getUrl());
+            boolean resume = canResume(latestSite);
+            boolean incremental = crawlerSettings.isIncremental() && activeSite != null
+                    && (!resume || latestSite.isActive());
+            if (resume) {
+                log.info("Resuming interrupted indexing for the site: {}", site.getUrl());
+                updateSiteStatus(site.getUrl(), Status.INDEXING, null);
+            } else if (incremental) {
+                log.info("Incremental recrawl of the site: {}", site.getUrl());
+                segmentIndex.dropSites(siteCRUDService.deleteInactiveGenerations(site.getUrl()));
+                updateSiteStatus(site.getUrl(), Status.INDEXING, null);
+            } else {
+                createShadowGeneration(site);
+            }
+            politenessScheduler.registerSite(site, RobotsTxt.empty());
+            FetchResult rootResponse = fetchRoot(site);
+            if (rootResponse != null) {
                 try {
-                    ForkJoinPool pool = new ForkJoinPool();
-                    pool.invoke(new SiteMapper(site.getUrl(), siteDto, connectionProfile,
-                            pageCRUDService, siteCRUDService, lemmaCRUDService, indexCRUDService));
-                    pool.shutdown();
-                    if (!pool.awaitTermination(60, TimeUnit.MINUTES)) {
-                        String errorMessage = "Тайм-аут индексации (более 1 часа) для сайта: " + site.getUrl();
-                        log.warn("Indexing timeout (more than 1 hour) for site: " + site.getUrl());
+                    if (!crawlSite(site, siteCRUDService.getByUrl(site.getUrl()), incremental, !resume, rootResponse)) {
+                        String errorMessage = "Тайм-аут индексации (более " + crawlerSettings.getTimeoutMinutes()
+                                + " мин.) для сайта: " + site.getUrl();
+                        log.warn("Indexing timeout (more than {} minutes) for site: {}", crawlerSettings.getTimeoutMinutes(), site.getUrl());
                         updateSiteStatus(site.getUrl(), Status.FAILED, errorMessage);
                         isIndexing.set(false);
                     }
@@ -140,7 +316,8 @@ public class SiteIndexingServiceImpl implements SiteIndexingService {
                     } else {
                         log.info("Indexing was completed for the site: {}", site.getUrl());
                         updateSiteStatus(site.getUrl(), Status.INDEXED, null);
-                        stopIndexingStatus();
+                        frontierCRUDService.deleteBySiteId(siteCRUDService.getByUrl(site.getUrl()).getId());
+                        completed = true;
                     }
                 } catch (InterruptedException e) {
                     log.warn("Indexing was stopped for the site: {}", site.getUrl());
@@ -152,9 +329,205 @@ public class SiteIndexingServiceImpl implements SiteIndexingService {
         catch (Exception e) {
             log.error("Error indexing site {}: {}", site.getUrl(), e.getMessage());
             updateSiteStatus(site.getUrl(), Status.FAILED, "Ошибка во время индексации сайта: " + e.getMessage());
+        } finally {
+            bodySweepLock.readLock().unlock();
+            generationLock.unlock();
+        }
+        if (completed) {
+            try {
+                activateGeneration(site.getUrl());
+            } catch (Exception e) {
+                log.error("Error activating site {}: {}", site.getUrl(), e.getMessage());
+                updateSiteStatus(site.getUrl(), Status.FAILED, "Ошибка во время индексации сайта: " + e.getMessage());
+            }
+            stopIndexingStatus();
         }
     }
 
+    /**
+     * Полная переиндексация пишет в новую строку site, пока поиск работает по прежней.
+     * Если прежнего поколения нет, новое сразу становится активным.
+     */
+    private void createShadowGeneration(Site site) {
+        segmentIndex.dropSites(siteCRUDService.deleteInactiveGenerations(site.getUrl()));
+        SiteDto siteDto = siteCRUDService.createSiteDto(site);
+        siteDto.setActive(siteCRUDService.getActiveByUrl(site.getUrl()) == null);
+        siteCRUDService.create(siteDto);
+    }
+
+    /**
+     * Переключает поиск на последнее поколение сайта, старое удаляется в фоне.
+     * Вызывается после того, как обход отпустил блокировки сайта.
+     */
+    private void activateGeneration(String siteUrl) {
+        ReadWriteLock siteLock = generationLock(siteUrl);
+        siteLock.readLock().lock();
+        try {
+            SiteDto siteDto = siteCRUDService.getByUrl(siteUrl);
+            if (siteDto == null || siteDto.isActive()) {
+                return;
+            }
+            siteCRUDService.activate(siteDto);
+            segmentIndex.commit(siteDto);
+        } finally {
+            siteLock.readLock().unlock();
+        }
+        generationCleaner.execute(() -> {
+            siteLock.writeLock().lock();
+            try {
+                segmentIndex.dropSites(siteCRUDService.deleteInactiveGenerations(siteUrl));
+            } catch (Exception e) {
+                log.error("Old generations of site {} were not deleted: {}", siteUrl, e.getMessage());
+            } finally {
+                siteLock.writeLock().unlock();
+            }
+            sweepUnusedBodies();
+        });
+    }
+
+    private void sweepUnusedBodies() {
+        if (!bodySweepLock.writeLock().tryLock()) {
+            log.debug("Unused page bodies are not swept: pages are being written");
+            return;
+        }
+        try {
+            pageCRUDService.deleteUnusedBodies();
+        } catch (Exception e) {
+            log.error("Unused page bodies were not deleted: {}", e.getMessage());
+        } finally {
+            bodySweepLock.writeLock().unlock();
+        }
+    }
+
+    private ReadWriteLock generationLock(String siteUrl) {
+        return generationLocks.computeIfAbsent(siteUrl, url -> new ReentrantReadWriteLock());
+    }
+
+    /**
+     * @param pruneUnreached удалять ли страницы, до которых не дошёл инкрементальный обход;
+     *                       после возобновления обхода часть страниц пройдена раньше, поэтому нельзя
+     * @param rootResponse   ответ главной страницы, полученный при проверке доступности сайта
+     */
+    private boolean crawlSite(Site site, SiteDto siteDto, boolean incremental, boolean pruneUnreached,
+                              FetchResult rootResponse) throws InterruptedException {
+        RobotsTxt robotsTxt = RobotsTxt.load(site.getUrl(), pageFetcher, politenessScheduler);
+        politenessScheduler.registerSite(site, robotsTxt);
+        VisitedUrls visitedUrls = createVisitedUrls();
+        CrawlBudget budget = createBudget(site, siteDto);
+        CrawlContext context = new CrawlContext(siteDto, pageFetcher, pageIndexer, politenessScheduler,
+                visitedUrls, urlCanonicalizer, crawlerSettings.isRespectRobotsTxt() ? robotsTxt : RobotsTxt.empty(),
+                budget, crawlerSettings.isFollowCanonicalLinks(), incremental);
+        context.prefetch(context.getRootUrl(), rootResponse);
+        CrawlFrontier frontier = crawlerSettings.getFrontier() == FrontierMode.PERSISTENT
+                ? new PersistentCrawlFrontier(siteDto.getId(), crawlerSettings.getFrontierBatchSize(),
+                frontierCRUDService, visitedUrls, budget)
+                : new InMemoryCrawlFrontier(visitedUrls, budget);
+        getSitemapUrls(context, robotsTxt).forEach(url -> frontier.offer(url, 1));
+        if (incremental) {
+            getKnownPageUrls(siteDto).forEach(url -> frontier.offer(url, 1));
+        }
+        if (!incremental) {
+            indexCRUDService.beginBulkLoad(siteDto.getId());
+        }
+        pageIndexer.openSite(siteDto.getId());
+        try {
+            boolean finished;
+            if (crawlerSettings.getEngine() == CrawlerEngine.ASYNC) {
+                AsyncSiteCrawler crawler = new AsyncSiteCrawler(context, crawlerSettings, frontier);
+                activeCrawlers.add(crawler);
+                try {
+                    finished = crawler.crawl();
+                } finally {
+                    activeCrawlers.remove(crawler);
+                }
+            } else {
+                finished = crawlWithForkJoin(site, context, frontier);
+            }
+            if (finished && pruneUnreached && isIndexing.get() && !budget.isExhausted()) {
+                log.info("Pages no longer reachable on site {} were deleted: {}", site.getUrl(),
+                        context.deleteUnreachedPages());
+            }
+            return finished;
+        } finally {
+            try {
+                indexCRUDService.finishBulkLoad(siteDto.getId());
+            } finally {
+                pageIndexer.forgetSite(siteDto.getId());
+                segmentIndex.commit(siteDto);
+            }
+            log.info("Visited urls of site {}: {}, false positive rate: {}", site.getUrl(),
+                    visitedUrls.size(), String.format(Locale.ROOT, "%.6f", visitedUrls.falsePositiveRate()));
+        }
+    }
+
+    private boolean crawlWithForkJoin(Site site, CrawlContext context, CrawlFrontier frontier) throws InterruptedException {
+        frontier.offer(context.getRootUrl(), 0);
+        int workers = crawlerSettings.getWorkerThreads();
+        ForkJoinPool pool = new ForkJoinPool(workers);
+        AtomicInteger active = new AtomicInteger();
+        IndexingPipeline pipeline = new IndexingPipeline(context, frontier, crawlerSettings, () -> {
+        });
+        boolean finished = false;
+        try {
+            for (int i = 0; i < workers; i++) {
+                pool.execute(new SiteMapper(context, frontier, pipeline, active));
+            }
+            pool.shutdown();
+            finished = pool.awaitTermination(crawlerSettings.getTimeoutMinutes(), TimeUnit.MINUTES);
+            if (!finished) {
+                pool.shutdownNow();
+            }
+            return finished;
+        } finally {
+            if (finished) {
+                pipeline.shutdown();
+            } else {
+                pipeline.shutdownNow();
+            }
+            frontier.flush();
+        }
+    }
+
+    private CrawlBudget createBudget(Site site, SiteDto siteDto) {
+        int maxDepth = site.getMaxDepth() != null ? site.getMaxDepth() : crawlerSettings.getMaxDepth();
+        int maxPages = site.getMaxPages() != null ? site.getMaxPages() : crawlerSettings.getMaxPagesPerSite();
+        boolean resumed = crawlerSettings.getFrontier() == FrontierMode.PERSISTENT
+                && frontierCRUDService.hasUnfinished(siteDto.getId());
+        int alreadyFetched = resumed ? pageCRUDService.getPageCountBySiteId(siteDto.getId()) : 0;
+        return new CrawlBudget(maxDepth, maxPages, site.getIncludePatterns(), site.getExcludePatterns(), alreadyFetched);
+    }
+
+    private List<String> getSitemapUrls(CrawlContext context, RobotsTxt robotsTxt) {
+        if (!crawlerSettings.isUseSitemaps()) {
+            return List.of();
+        }
+        List<String> sitemaps = robotsTxt.getSitemaps().isEmpty()
+                ? List.of(context.getSiteDto().getUrl() + "sitemap.xml") : robotsTxt.getSitemaps();
+        return new SitemapReader(pageFetcher, politenessScheduler, crawlerSettings.getMaxSitemapUrls()).read(sitemaps).stream()
+                .map(context::canonicalize)
+                .filter(Objects::nonNull)
+                .toList();
+    }
+
+    private List<String> getKnownPageUrls(SiteDto siteDto) {
+        String siteUrl = siteDto.getUrl().substring(0, siteDto.getUrl().length() - 1);
+        return pageCRUDService.getPathsBySiteId(siteDto.getId()).stream().map(path -> siteUrl + path).toList();
+    }
+
+    private VisitedUrls createVisitedUrls() {
+        if (crawlerSettings.getVisitedTracking() == VisitedTracking.BLOOM) {
+            return new ScalableBloomFilter(crawlerSettings.getExpectedUrlsPerSite(), crawlerSettings.getMaxFalsePositiveRate());
+        }
+        return new FingerprintSet(crawlerSettings.getExpectedUrlsPerSite());
+    }
+
+    private boolean canResume(SiteDto siteDto) {
+        return crawlerSettings.getFrontier() == FrontierMode.PERSISTENT
+                && siteDto != null
+                && siteDto.getStatus() != Status.INDEXED
+                && frontierCRUDService.hasUnfinished(siteDto.getId());
+    }
+
     private void updateSiteStatus(String siteUrl, Status status, String errorMessage) {
         SiteDto siteDto = siteCRUDService.getByUrl(siteUrl);
         if (siteDto != null) {
@@ -165,20 +538,32 @@ public class SiteIndexingServiceImpl implements SiteIndexingService {
         }
     }
 
-    private boolean isSiteAccessible(Site site) {
+    /**
+     * @return ответ главной страницы, если сайт доступен, иначе null; обход не запрашивает её повторно
+     */
+    private FetchResult fetchRoot(Site site) {
+        int statusCode = 0;
+        String retryAfter = null;
         try {
-            UrlConnector urlConnector = new UrlConnector(site.getUrl(), connectionProfile);
-            int statusCode = urlConnector.getStatusCode();
+            politenessScheduler.acquire(site.getUrl());
+            FetchResult response;
+            try {
+                response = pageFetcher.fetch(site.getUrl());
+                statusCode = response.getStatusCode();
+                retryAfter = response.getRetryAfter();
+            } finally {
+                politenessScheduler.release(site.getUrl(), statusCode, retryAfter);
+            }
             if (!(statusCode >= 200 && statusCode < 300)) {
                 updateSiteStatus(site.getUrl(), Status.FAILED, "Сайт недоступен. Код ошибки: " + statusCode);
                 log.warn("Site is not available. Error code: " + statusCode);
-                return false;
+                return null;
             }
-            return true;
+            return response;
         } catch (Exception e) {
             updateSiteStatus(site.getUrl(), Status.FAILED, "Ошибка индексации сайта " + site.getUrl() + ": " + e.getMessage());
             log.warn("Error indexing site " + site.getUrl() + ": " + e.getMessage());
-            return false;
+            return null;
         }
     }
 
@@ -2,40 +2,32 @@ package searchengine.services.implementation;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.jsoup.UnsupportedMimeTypeException;
-import org.jsoup.nodes.Document;
-import org.jsoup.select.Elements;
-import searchengine.config.ConnectionProfile;
-import searchengine.dto.indexing.IndexDto;
+import searchengine.dto.indexing.FrontierUrlDto;
 import searchengine.dto.indexing.PageDto;
-import searchengine.dto.indexing.SiteDto;
-import searchengine.services.utilities.LemmaFinder;
-import searchengine.services.repositoryServices.IndexCRUDService;
-import searchengine.services.repositoryServices.LemmaCRUDService;
-import searchengine.services.repositoryServices.PageCRUDService;
-import searchengine.services.repositoryServices.SiteCRUDService;
-import searchengine.services.utilities.UrlConnector;
+import searchengine.services.utilities.FetchResult;
 
-import java.net.SocketTimeoutException;
-import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
+import java.net.http.HttpTimeoutException;
 import java.util.concurrent.RecursiveAction;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
+/**
+ * Рабочий обхода в ForkJoinPool: берёт из очереди ссылку с наивысшим приоритетом, загружает
+ * страницу и передаёт её в IndexingPipeline, который возвращает найденные ссылки в очередь.
+ * Завершается, когда очередь пуста и ни одна страница не загружается и не обрабатывается,
+ * либо когда исчерпан бюджет страниц.
+ */
 @RequiredArgsConstructor
 @Slf4j
 public class SiteMapper extends RecursiveAction {
-    private static final Set<String> visitedUrls = ConcurrentHashMap.newKeySet();
-
-    private final String url;
-    private final SiteDto siteDto;
-    private final ConnectionProfile connectionProfile;
-    private final PageCRUDService pageCRUDService;
-    private final SiteCRUDService siteCRUDService;
-    private final LemmaCRUDService lemmaCRUDService;
-    private final IndexCRUDService indexCRUDService;
+    private static final long IDLE_MILLIS = 50;
     private static final AtomicBoolean stopRequested = new AtomicBoolean(false);
 
+    private final CrawlContext context;
+    private final CrawlFrontier frontier;
+    private final IndexingPipeline pipeline;
+    private final AtomicInteger active;
+
     public static void requestStop() {
         stopRequested.set(true);
     }
@@ -44,58 +36,83 @@ public class SiteMapper extends RecursiveAction {
         stopRequested.set(false);
     }
 
-    public static void clearVisitedUrls() {
-        visitedUrls.clear();
-    }
-
     @Override
     public void compute() {
-        if (!visitedUrls.add(url) || Thread.currentThread().isInterrupted() || stopRequested.get()) {
+        while (!stopRequested.get() && !Thread.currentThread().isInterrupted() && !context.getBudget().isExhausted()) {
+            active.incrementAndGet();
+            FrontierUrlDto entry = frontier.poll();
+            if (entry == null) {
+                if (active.decrementAndGet() == 0 && pipeline.isIdle() && frontier.isEmpty()) {
+                    return;
+                }
+                try {
+                    Thread.sleep(IDLE_MILLIS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                continue;
+            }
+            try {
+                if (!context.getBudget().tryStartPage()) {
+                    frontier.requeue(entry);
+                    return;
+                }
+                crawl(entry);
+            } finally {
+                active.decrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * HTML-страница передаётся в pipeline, который сам отметит ссылку завершённой;
+     * прерванная загрузка возвращает ссылку в очередь.
+     */
+    private void crawl(FrontierUrlDto entry) {
+        String url = entry.getUrl();
+        PolitenessScheduler politenessScheduler = context.getPolitenessScheduler();
+        try {
+            politenessScheduler.acquire(url);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            frontier.requeue(entry);
             return;
         }
+        int statusCode = 0;
+        String retryAfter = null;
+        FetchResult htmlPage = null;
         try {
-            UrlConnector urlConnector = new UrlConnector(url, connectionProfile);
-            int statusCode = urlConnector.getStatusCode();
-            if (statusCode >= 400) {
+            FetchResult response = context.takePrefetched(url);
+            if (response == null) {
+                PageDto validators = context.getValidators(url);
+                response = validators == null
+                        ? context.getPageFetcher().fetch(url)
+                        : context.getPageFetcher().fetch(url, validators.getEtag(), validators.getLastModified());
+            }
+            statusCode = response.getStatusCode();
+            retryAfter = response.getRetryAfter();
+            if (stopRequested.get()) {
+                frontier.requeue(entry);
                 return;
             }
-            Document document = urlConnector.getDocument();
-            PageDto pageDto = pageCRUDService.createPageDto(url, document, statusCode, siteDto);
-            try {
-                pageCRUDService.create(pageDto);
-                LemmaFinder lemmaFinder = LemmaFinder.getInstance();
-                Map<String, Integer> lemmas = lemmaFinder.collectLemmas(urlConnector.getDocument().text());
-                int pageId = pageCRUDService.getByUrlAndSiteId(pageDto.getPath(), pageDto.getSite()).getId();
-                int siteId = siteCRUDService.getByUrl(siteDto.getUrl()).getId();
-                List<IndexDto> indexList = lemmaCRUDService.saveLemmasListAndCreateIndexes(lemmas, pageId, siteId);
-                indexCRUDService.addAll(indexList);
-            } catch (Exception e) {
-                log.warn("Error (" + e.getMessage() + ") while processing site {}", url);
+            if (statusCode < 400 && !response.isNotModified() && response.isHtml()) {
+                htmlPage = response;
             }
-            parsePage(document);
-            Thread.sleep(500 + (int) (Math.random() * 4500));
-        } catch (UnsupportedMimeTypeException | SocketTimeoutException ignored) {
+        } catch (HttpTimeoutException ignored) {
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            frontier.requeue(entry);
+            return;
         } catch (Exception e) {
             log.error("Error processing URL: {}. Error message: {}", url, e.getMessage());
+        } finally {
+            politenessScheduler.release(url, statusCode, retryAfter);
+        }
+        context.pageFetched(url, statusCode);
+        if (htmlPage != null) {
+            pipeline.submit(entry, htmlPage);
+        } else {
+            frontier.complete(entry);
         }
-    }
-
-    private void parsePage(Document document) {
-        Elements links = document.select("a[href]");
-        links.stream()
-                .map(link -> link.attr("abs:href"))
-                .filter(this::isValidLink)
-                .forEach(link -> {
-                    if (!stopRequested.get()) {
-                        SiteMapper task = new SiteMapper(link, siteDto, connectionProfile,
-                                pageCRUDService, siteCRUDService, lemmaCRUDService, indexCRUDService);
-                        task.fork();
-                    }
-                });
-    }
-
-    private boolean isValidLink(String link) {
-        return link.startsWith(siteDto.getUrl())
-                && !link.contains("#");
     }
 }
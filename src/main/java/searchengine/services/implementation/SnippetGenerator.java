@@ -2,85 +2,100 @@ package searchengine.services.implementation;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.jsoup.Jsoup;
-import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Entities;
 import searchengine.dto.indexing.LemmaDto;
 import searchengine.dto.indexing.PageDto;
 import searchengine.services.utilities.LemmaFinder;
+import searchengine.services.utilities.TermPositions;
 
 import java.util.*;
 import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
+/**
+ * Фрагмент текста страницы с найденными словами. Окно выбирается по сохранённым позициям лемм:
+ * от совпадения операторов запроса или там, где на 30 слов приходится больше всего разных лемм запроса.
+ */
 @Slf4j
 @RequiredArgsConstructor
 public class SnippetGenerator {
+    private static final int WINDOW_WORDS = 30;
+    private static final int WORDS_BEFORE = 8;
+
     private final PageDto pageDto;
+    private final TermPositions positions;
     private final List<LemmaDto> lemmas;
+    /**
+     * Позиция совпадения операторов запроса или -1.
+     */
+    private final int anchor;
 
     public String generateSnippet() {
-        String allPageText = pageDto.getContent().toLowerCase();
-        Document doc = Jsoup.parse(allPageText);
-        String text = doc.body().html();
         try {
-            LemmaFinder lemmaFinder = LemmaFinder.getInstance();
-            Set<String> wordForms = getAllWordForms(lemmas, lemmaFinder);
-            int index = findFirstMatchIndex(text, wordForms);
-            if (index == -1) {
+            int[][] lemmaPositions = new int[lemmas.size()][];
+            for (int i = 0; i < lemmas.size(); i++) {
+                lemmaPositions[i] = positions.get(lemmas.get(i).getLemma());
+            }
+            int[] matched = mergePositions(lemmaPositions);
+            if (matched.length == 0) {
                 return "";
             }
-            int start = Math.max(0, index - 150);
-            int end = Math.min(text.length(), index + 150);
-            String snippet = extractText(text.substring(start, end));
-            return highlightKeywords(snippet, wordForms);
+            int start = anchor >= 0 ? anchor : findBestWindow(lemmaPositions, matched);
+            int first = Math.max(0, start - WORDS_BEFORE);
+            return cut(pageDto.getText(), first, first + WINDOW_WORDS - 1, matched);
         } catch (Exception e) {
             log.warn("Snippet was not generated: " + e.getMessage());
             return null;
         }
     }
 
-    private Set<String> getAllWordForms(List<LemmaDto> lemmas, LemmaFinder lemmaFinder) {
-        Set<String> wordForms = new HashSet<>();
-        for (LemmaDto lemmaDto : lemmas) {
-            wordForms.addAll(lemmaFinder.getWordForms(lemmaDto.getLemma()));
-        }
-        return wordForms;
+    private static int[] mergePositions(int[][] lemmaPositions) {
+        return Arrays.stream(lemmaPositions).flatMapToInt(Arrays::stream).sorted().distinct().toArray();
     }
 
-    public int findFirstMatchIndex(String text, Set<String> words) {
-        String lowerText = text.toLowerCase();
-        for (String word : words) {
-            int index = lowerText.indexOf(word.toLowerCase());
-            if (index != -1) {
-                return index;
+    /**
+     * @return позиция, с которой в окне из WINDOW_WORDS - WORDS_BEFORE слов больше всего разных лемм запроса
+     */
+    private static int findBestWindow(int[][] lemmaPositions, int[] matched) {
+        int width = WINDOW_WORDS - WORDS_BEFORE;
+        int best = matched[0];
+        int bestCount = 0;
+        for (int start : matched) {
+            int count = 0;
+            for (int[] single : lemmaPositions) {
+                int index = Arrays.binarySearch(single, start);
+                int next = index >= 0 ? index : -index - 1;
+                if (next < single.length && single[next] < start + width) {
+                    count++;
+                }
+            }
+            if (count > bestCount) {
+                best = start;
+                bestCount = count;
             }
         }
-        return -1;
-    }
-
-    public static String highlightKeywords(String text, Set<String> wordForms) {
-        if (wordForms.isEmpty() || text.isEmpty()) {
-            return text;
-        }
-        String regex = "(?i)(?<=\\s|^)(" + String.join("|", wordForms) + ")(?=\\s|$|[.,!?])";
-        Pattern pattern = Pattern.compile(regex, Pattern.UNICODE_CASE);
-        Matcher matcher = pattern.matcher(text);
-        StringBuilder result = new StringBuilder();
-        while (matcher.find()) {
-            matcher.appendReplacement(result, "<b>" + matcher.group() + "</b>");
-        }
-        matcher.appendTail(result);
-        return result.toString();
+        return best;
     }
 
-    public static String extractText(String input) {
-        if (input == null || input.isEmpty()) {
-            return "";
+    /**
+     * Вырезает слова с номерами от first до last и выделяет найденные. Текст страницы хранится
+     * с раскодированными сущностями, поэтому всё, кроме тегов выделения, экранируется.
+     */
+    private static String cut(String text, int first, int last, int[] matched) {
+        Matcher matcher = LemmaFinder.WORD.matcher(text);
+        StringBuilder snippet = new StringBuilder();
+        int position = 0;
+        int previousEnd = -1;
+        while (position <= last && matcher.find()) {
+            if (position >= first) {
+                if (previousEnd >= 0) {
+                    snippet.append(Entities.escape(text.substring(previousEnd, matcher.start())));
+                }
+                boolean highlighted = Arrays.binarySearch(matched, position) >= 0;
+                snippet.append(highlighted ? "<b>" : "").append(Entities.escape(matcher.group())).append(highlighted ? "</b>" : "");
+                previousEnd = matcher.end();
+            }
+            position++;
         }
-        String cleanedText = input.replaceAll("</?(?!b\\b)[a-zA-Z][^>]*>", "");
-        cleanedText = cleanedText.replaceAll("<[^>]*|[^<]*>", "");
-        cleanedText = cleanedText.replaceAll("\\s+", " ").trim();
-
-        return cleanedText;
+        return snippet.toString().trim();
     }
 }
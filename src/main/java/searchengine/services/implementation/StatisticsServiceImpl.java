@@ -13,6 +13,7 @@ import searchengine.services.api.StatisticsService;
 import searchengine.services.repositoryServices.LemmaCRUDService;
 import searchengine.services.repositoryServices.PageCRUDService;
 import searchengine.services.repositoryServices.SiteCRUDService;
+import searchengine.services.utilities.LemmaFinder;
 
 import java.util.List;
 import java.util.concurrent.CopyOnWriteArrayList;
@@ -28,6 +29,7 @@ public class StatisticsServiceImpl implements StatisticsService {
     private final PageCRUDService pageCRUDService;
     private final SiteCRUDService siteCRUDService;
     private final LemmaCRUDService lemmaCRUDService;
+    private final LemmaFinder lemmaFinder;
 
     @Override
     public StatisticsResponse getStatistics() {
@@ -35,6 +37,8 @@ public class StatisticsServiceImpl implements StatisticsService {
         List<DetailedStatisticsItem> detailed = new CopyOnWriteArrayList<>();
         total.setSites(siteCRUDService.countNumberOfSitesInDB());
         total.setIndexing(true);
+        total.setMorphologyCacheSize(lemmaFinder.getCacheSize());
+        total.setMorphologyCacheHitRate(lemmaFinder.getCacheHitRate());
 
         List<Site> sitesList = siteCRUDService.getAllSites();
         ExecutorService executorService = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
@@ -0,0 +1,84 @@
+package searchengine.services.repositoryServices;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import searchengine.dto.indexing.FrontierUrlDto;
+import searchengine.model.FrontierStatus;
+import searchengine.repositories.FrontierRepository;
+
+import java.util.List;
+import java.util.function.LongConsumer;
+
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class FrontierCRUDService {
+    private final FrontierRepository frontierRepository;
+    private final JdbcTemplate jdbcTemplate;
+
+    public void addAll(int siteId, List<FrontierUrlDto> urls) {
+        if (urls.isEmpty()) {
+            return;
+        }
+        jdbcTemplate.batchUpdate("INSERT INTO frontier (site_id, url, fingerprint, depth, priority, status) VALUES (?, ?, ?, ?, ?, ?) "
+                        + "ON CONFLICT (site_id, fingerprint) DO NOTHING",
+                urls, urls.size(), (ps, url) -> {
+                    ps.setInt(1, siteId);
+                    ps.setString(2, url.getUrl());
+                    ps.setLong(3, url.getFingerprint());
+                    ps.setInt(4, url.getDepth());
+                    ps.setInt(5, url.getPriority());
+                    ps.setString(6, FrontierStatus.PENDING.name());
+                });
+    }
+
+    public List<FrontierUrlDto> takePending(int siteId, int limit) {
+        return jdbcTemplate.query("UPDATE frontier SET status = ? WHERE id IN ("
+                        + "SELECT id FROM frontier WHERE site_id = ? AND status = ? ORDER BY priority, id LIMIT ?) "
+                        + "RETURNING id, url, fingerprint, depth, priority",
+                (rs, rowNum) -> {
+                    FrontierUrlDto dto = new FrontierUrlDto();
+                    dto.setId(rs.getLong("id"));
+                    dto.setUrl(rs.getString("url"));
+                    dto.setFingerprint(rs.getLong("fingerprint"));
+                    dto.setDepth(rs.getInt("depth"));
+                    dto.setPriority(rs.getInt("priority"));
+                    return dto;
+                },
+                FrontierStatus.QUEUED.name(), siteId, FrontierStatus.PENDING.name(), limit);
+    }
+
+    public void markDone(List<Long> ids) {
+        if (ids.isEmpty()) {
+            return;
+        }
+        jdbcTemplate.update(connection -> {
+            var ps = connection.prepareStatement("UPDATE frontier SET status = ? WHERE id = ANY (?)");
+            ps.setString(1, FrontierStatus.DONE.name());
+            ps.setArray(2, connection.createArrayOf("bigint", ids.toArray()));
+            return ps;
+        });
+    }
+
+    public void loadFingerprints(int siteId, LongConsumer consumer) {
+        jdbcTemplate.query("SELECT fingerprint FROM frontier WHERE site_id = ?",
+                rs -> {
+                    consumer.accept(rs.getLong(1));
+                }, siteId);
+    }
+
+    public boolean hasUnfinished(int siteId) {
+        return frontierRepository.existsBySiteIdAndStatusIn(siteId, List.of(FrontierStatus.PENDING, FrontierStatus.QUEUED));
+    }
+
+    public void requeueTaken(int siteId) {
+        int count = frontierRepository.updateStatus(siteId, FrontierStatus.QUEUED, FrontierStatus.PENDING);
+        log.info("{} frontier urls of site {} were returned to the queue", count, siteId);
+    }
+
+    public void deleteBySiteId(int siteId) {
+        frontierRepository.deleteBySiteId(siteId);
+    }
+}
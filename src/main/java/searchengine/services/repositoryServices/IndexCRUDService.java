@@ -2,39 +2,79 @@ package searchengine.services.repositoryServices;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.postgresql.PGConnection;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import searchengine.config.StorageSettings;
 import searchengine.dto.indexing.IndexDto;
 import searchengine.model.Index;
 import searchengine.repositories.IndexRepository;
-import searchengine.repositories.LemmaRepository;
-import searchengine.repositories.PageRepository;
+import searchengine.services.utilities.CopyBuffer;
+import searchengine.services.utilities.Postings;
 
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.sql.Array;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Collection;
 import java.util.List;
-import java.util.Optional;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 @Service
 @RequiredArgsConstructor
 @Slf4j
 public class IndexCRUDService {
-    private final PageRepository pageRepository;
-    private final LemmaRepository lemmaRepository;
     private final IndexRepository indexRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final StorageSettings storageSettings;
+    private final Map<Integer, CopyBuffer> copyBuffers = new ConcurrentHashMap<>();
+    /**
+     * Первая ошибка COPY сайта: строки буфера потеряны, поэтому finishBulkLoad завершается ошибкой.
+     */
+    private final Map<Integer, DataAccessException> copyFailures = new ConcurrentHashMap<>();
 
     public List<Integer> getLemmaIdsByPageId(Integer pageId) {
         return indexRepository.findLemmaIdsByPageId(pageId);
     }
 
-    public List<Integer> getPageIdsByLemmaId(Integer lemmaId) {
-        return indexRepository.findPageIdsByLemmaId(lemmaId);
+    /**
+     * Список страниц леммы прямо из index_table, пока сжатый список в lemma.postings не собран.
+     */
+    public Postings getPostings(int siteId, int lemmaId) {
+        List<Postings> postings = jdbcTemplate.query(
+                "SELECT array_agg(page_id ORDER BY page_id), array_agg(ranking::real ORDER BY page_id) "
+                        + "FROM index_table WHERE site_id = ? AND lemma_id = ?",
+                (rs, rowNum) -> {
+                    Array pageIds = rs.getArray(1);
+                    if (pageIds == null) {
+                        return Postings.EMPTY;
+                    }
+                    Integer[] ids = (Integer[]) pageIds.getArray();
+                    Float[] ranks = (Float[]) rs.getArray(2).getArray();
+                    int[] primitiveIds = new int[ids.length];
+                    float[] primitiveRanks = new float[ids.length];
+                    for (int i = 0; i < ids.length; i++) {
+                        primitiveIds[i] = ids[i];
+                        primitiveRanks[i] = ranks[i];
+                    }
+                    return new Postings(primitiveIds, primitiveRanks);
+                }, siteId, lemmaId);
+        return postings.get(0);
     }
 
-    public IndexDto getIndexByLemmaIdAndPageId(Integer lemmaId, Integer pageId) {
-        Optional<Index> index = indexRepository.findIndexByLemmaIdAndPageId(lemmaId, pageId);
-        if (index.isEmpty()) {
-            log.warn("Index " + index + " was not found.");
-            return null;
-        } else {
-            return mapToDto(index.get());
+    public List<IndexDto> getIndexesByPageId(Integer pageId) {
+        return indexRepository.findByPageId(pageId).stream().map(this::mapToDto).toList();
+    }
+
+    public void deleteByIds(int siteId, List<Integer> ids) {
+        if (!ids.isEmpty()) {
+            indexRepository.deleteBySiteIdAndIdIn(siteId, ids);
         }
     }
 
@@ -58,17 +98,133 @@ public class IndexCRUDService {
         return indexRepository.count() == 0;
     }
 
-    public void addAll(List<IndexDto> indexDtos) {
+    /**
+     * Строка для той же пары (лемма, страница) заменяется: меняется только ранг.
+     */
+    @Transactional
+    public void upsert(int siteId, List<IndexDto> indexDtos) {
         if (indexDtos == null || indexDtos.isEmpty()) {
             log.info("An empty list was provided for indexing.");
             return;
         }
-        indexDtos.forEach((indexDto) -> {
-            Index index = mapToModel(indexDto);
-            index.setPage(pageRepository.findById(indexDto.getPage()).orElseThrow());
-            index.setLemma(lemmaRepository.findById(indexDto.getLemma()).orElseThrow());
-            index.setRank(index.getRank());
-            indexRepository.save(index);
+        jdbcTemplate.batchUpdate("INSERT INTO index_table (site_id, page_id, lemma_id, ranking) VALUES (?, ?, ?, ?) "
+                        + "ON CONFLICT (lemma_id, page_id, site_id) DO UPDATE SET ranking = EXCLUDED.ranking",
+                indexDtos, storageSettings.getIndexBatchSize(), (ps, indexDto) -> {
+                    ps.setInt(1, siteId);
+                    ps.setInt(2, indexDto.getPage());
+                    ps.setInt(3, indexDto.getLemma());
+                    ps.setFloat(4, indexDto.getRank());
+                });
+    }
+
+    public interface PostingConsumer {
+        void accept(String lemma, int pageId, float rank) throws IOException;
+    }
+
+    /**
+     * Читает строки индекса сайта курсором, сгруппированные по лемме и упорядоченные по странице.
+     *
+     * @param pageIds только эти страницы или null, если нужны все
+     */
+    @Transactional(readOnly = true)
+    public void forEachPosting(int siteId, Collection<Integer> pageIds, PostingConsumer consumer) {
+        jdbcTemplate.query(connection -> {
+            PreparedStatement ps = connection.prepareStatement("SELECT l.lemma, i.page_id, i.ranking FROM index_table i "
+                    + "JOIN lemma l ON l.id = i.lemma_id AND l.site_id = i.site_id WHERE i.site_id = ?"
+                    + (pageIds == null ? "" : " AND i.page_id = ANY (?)")
+                    + " ORDER BY l.lemma COLLATE \"C\", i.page_id");
+            ps.setFetchSize(storageSettings.getIndexBatchSize());
+            ps.setInt(1, siteId);
+            if (pageIds != null) {
+                ps.setArray(2, connection.createArrayOf("integer", pageIds.toArray()));
+            }
+            return ps;
+        }, rs -> {
+            try {
+                consumer.accept(rs.getString(1), rs.getInt(2), rs.getFloat(3));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
         });
     }
+
+    /**
+     * Включает для сайта загрузку индексов через COPY. Только для полной переиндексации:
+     * строки в буфере не видны запросам, пока не выполнен finishBulkLoad.
+     * <p>
+     * Через COPY идут только строки index_table. Страницы и леммы пишутся сразу: их id нужны обходу,
+     * а новые леммы вставляются с ON CONFLICT, которого у COPY нет. Индексы партиции не удаляются:
+     * idx_index_lemma_page нужен upsert при переиндексации страницы во время обхода, а индексы
+     * секционированной таблицы нельзя удалить у одной партиции.
+     */
+    public void beginBulkLoad(int siteId) {
+        if (storageSettings.isBulkLoad()) {
+            copyFailures.remove(siteId);
+            copyBuffers.put(siteId, new CopyBuffer(storageSettings.getCopyBufferRows()));
+            log.info("Bulk load of index rows enabled for site {}", siteId);
+        }
+    }
+
+    public void addAll(int siteId, List<IndexDto> indexDtos) {
+        CopyBuffer buffer = copyBuffers.get(siteId);
+        if (buffer == null) {
+            upsert(siteId, indexDtos);
+            return;
+        }
+        boolean full = false;
+        for (IndexDto indexDto : indexDtos) {
+            full = buffer.append(siteId, indexDto.getPage(), indexDto.getLemma(), indexDto.getRank());
+        }
+        if (full) {
+            copy(siteId, buffer.drain());
+        }
+    }
+
+    /**
+     * Отправляет накопленные строки, чтобы индексы страницы можно было прочитать из базы.
+     */
+    public void flushBulkLoad(int siteId) {
+        CopyBuffer buffer = copyBuffers.get(siteId);
+        if (buffer != null) {
+            copy(siteId, buffer.drain());
+        }
+    }
+
+    /**
+     * @throws DataAccessException если хотя бы одна порция строк сайта не была записана
+     */
+    public void finishBulkLoad(int siteId) {
+        CopyBuffer buffer = copyBuffers.remove(siteId);
+        if (buffer == null) {
+            return;
+        }
+        DataAccessException failure = copyFailures.remove(siteId);
+        if (failure != null) {
+            throw failure;
+        }
+        copy(siteId, buffer.drain());
+        jdbcTemplate.execute("ANALYZE " + SiteCRUDService.partitionName("index_table", siteId));
+        log.info("Bulk load of index rows finished for site {}", siteId);
+    }
+
+    private void copy(int siteId, String rows) {
+        if (rows.isEmpty()) {
+            return;
+        }
+        try {
+            long count = jdbcTemplate.execute((ConnectionCallback<Long>) connection -> {
+                try {
+                    return connection.unwrap(PGConnection.class).getCopyAPI()
+                            .copyIn("COPY index_table (site_id, page_id, lemma_id, ranking) FROM STDIN", new StringReader(rows));
+                } catch (IOException e) {
+                    throw new SQLException(e);
+                }
+            });
+            log.debug("{} index rows of site {} copied", count, siteId);
+        } catch (DataAccessException e) {
+            log.error("COPY of index rows for site {} failed: {}", siteId, e.getMessage());
+            copyFailures.putIfAbsent(siteId, e);
+            throw e;
+        }
+    }
 }
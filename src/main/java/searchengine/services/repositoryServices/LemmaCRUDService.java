@@ -2,34 +2,115 @@ package searchengine.services.repositoryServices;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import searchengine.config.StorageSettings;
 import searchengine.dto.indexing.IndexDto;
 import searchengine.dto.indexing.LemmaDto;
 import searchengine.model.Lemma;
 import searchengine.repositories.LemmaRepository;
-import searchengine.repositories.SiteRepository;
+import searchengine.services.utilities.LemmaDictionary;
+import searchengine.services.utilities.Postings;
+import searchengine.services.utilities.PostingsCodec;
 
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
 import java.util.*;
-import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ConcurrentHashMap;
 
 @Service
 @RequiredArgsConstructor
 @Slf4j
 public class LemmaCRUDService {
     private final LemmaRepository lemmaRepository;
-    private final SiteRepository siteRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final StorageSettings storageSettings;
+    private final Map<Integer, LemmaDictionary> dictionaries = new ConcurrentHashMap<>();
+    private final Deque<Integer> reservedIds = new ArrayDeque<>();
     private final static Float PERCENT_OF_SITES_WITH_COMMON_LEMMAS = 0.8f;
 
     public int getLemmaCountBySiteId(Integer siteId) {
         return lemmaRepository.countBySiteId(siteId);
     }
 
-    public void deleteLemmasByIds(List<Integer> lemmaIds) {
+    public Map<Integer, String> getLemmaNamesByIds(List<Integer> lemmaIds) {
+        Map<Integer, String> names = new HashMap<>();
+        lemmaRepository.findAllById(lemmaIds).forEach(lemma -> names.put(lemma.getId(), lemma.getLemma()));
+        return names;
+    }
+
+    /**
+     * Пока словарь сайта открыт, леммы с нулевой частотой не удаляются: на них может сослаться страница,
+     * которая индексируется параллельно. Словарь запоминает их, и удаляет их closeDictionary.
+     */
+    public void removeLemmaOccurrences(int siteId, List<Integer> lemmaIds) {
+        if (lemmaIds.isEmpty()) {
+            return;
+        }
+        lemmaRepository.decrementFrequencies(siteId, lemmaIds);
+        LemmaDictionary dictionary = dictionaries.get(siteId);
+        if (dictionary != null) {
+            dictionary.markDecremented(lemmaIds);
+        } else {
+            lemmaRepository.deleteUnusedByIdIn(siteId, lemmaIds);
+        }
+    }
+
+    /**
+     * Отмечает списки страниц лемм устаревшими, например, после изменения рангов на странице.
+     */
+    public void invalidatePostings(int siteId, List<Integer> lemmaIds) {
         if (!lemmaIds.isEmpty()) {
-            lemmaRepository.deleteByIdIn(lemmaIds);
+            lemmaRepository.invalidatePostings(siteId, lemmaIds);
         }
     }
 
+    /**
+     * Пересобирает сжатые списки страниц лемм сайта, у которых список отсутствует или устарел.
+     * Вызывается после того, как запись страниц сайта закончена.
+     */
+    @Transactional
+    public void buildPostings(int siteId) {
+        PostingsCollector collector = new PostingsCollector(siteId);
+        jdbcTemplate.query(connection -> {
+            PreparedStatement ps = connection.prepareStatement("SELECT i.lemma_id, i.page_id, i.ranking FROM index_table i "
+                    + "JOIN lemma l ON l.id = i.lemma_id AND l.site_id = i.site_id "
+                    + "WHERE i.site_id = ? AND l.postings IS NULL "
+                    + "ORDER BY i.lemma_id, i.page_id");
+            ps.setFetchSize(storageSettings.getIndexBatchSize());
+            ps.setInt(1, siteId);
+            return ps;
+        }, collector);
+        List<Object[]> batch = collector.finish();
+        jdbcTemplate.batchUpdate("UPDATE lemma SET postings = ? WHERE site_id = ? AND id = ?", batch);
+        log.info("Postings of {} lemmas built for site {}", batch.size(), siteId);
+    }
+
+    /**
+     * @return сжатые списки страниц лемм; леммы, у которых список ещё не собран, в результат не попадают
+     */
+    public Map<Integer, Postings> getPostings(int siteId, List<Integer> lemmaIds) {
+        Map<Integer, Postings> postings = new HashMap<>();
+        if (lemmaIds.isEmpty()) {
+            return postings;
+        }
+        jdbcTemplate.query(connection -> {
+            PreparedStatement ps = connection.prepareStatement(
+                    "SELECT id, postings FROM lemma WHERE site_id = ? AND id = ANY (?) AND postings IS NOT NULL");
+            ps.setInt(1, siteId);
+            ps.setArray(2, connection.createArrayOf("integer", lemmaIds.toArray()));
+            return ps;
+        }, rs -> {
+            postings.put(rs.getInt("id"), PostingsCodec.decode(rs.getBytes("postings")));
+        });
+        return postings;
+    }
+
     public static LemmaDto mapToDto(Lemma lemma) {
         LemmaDto lemmaDto = new LemmaDto();
         lemmaDto.setId(lemma.getId());
@@ -39,32 +120,198 @@ public class LemmaCRUDService {
         return lemmaDto;
     }
 
+    /**
+     * Если словарь сайта открыт, новые леммы вставляются сразу, до строк index_table, которые на них ссылаются,
+     * а частоты уже известных лемм накапливаются в словаре и записываются в flushLemmaFrequencies.
+     * Без словаря частоты меняются сразу, в транзакции вызывающего кода.
+     */
     public List<IndexDto> saveLemmasListAndCreateIndexes(Map<String, Integer> lemmas, int pageId, int siteId) {
-        List<IndexDto> indexList = new CopyOnWriteArrayList<>();
-        synchronized (lemmaRepository) {
-            for (Map.Entry<String, Integer> entry : lemmas.entrySet()) {
-                Optional<Lemma> lemma = lemmaRepository.findLemmaByLemmaAndSiteId(entry.getKey(), siteId);
-                if (lemma.isEmpty()) {
-                    Lemma lemmaToSave = new Lemma();
-                    lemmaToSave.setSite(siteRepository.findById(siteId).orElseThrow());
-                    lemmaToSave.setLemma(entry.getKey());
-                    lemmaToSave.setFrequency(1);
-                    lemmaRepository.save(lemmaToSave);
-                } else {
-                    Lemma lemmaToUpdate = lemma.get();
-                    Integer frequency = lemmaToUpdate.getFrequency();
-                    lemmaToUpdate.setFrequency(frequency + 1);
-                    lemmaRepository.save(lemmaToUpdate);
+        if (lemmas.isEmpty()) {
+            return new ArrayList<>();
+        }
+        LemmaDictionary dictionary = dictionaries.get(siteId);
+        Map<String, Integer> lemmaIds = dictionary == null
+                ? incrementFrequencies(siteId, lemmas.keySet())
+                : registerOccurrences(dictionary, lemmas.keySet());
+        List<IndexDto> indexList = new ArrayList<>(lemmas.size());
+        lemmas.forEach((lemma, count) -> {
+            IndexDto indexDto = new IndexDto();
+            indexDto.setPage(pageId);
+            indexDto.setLemma(lemmaIds.get(lemma));
+            indexDto.setRank(count.floatValue());
+            indexList.add(indexDto);
+        });
+        return indexList;
+    }
+
+    /**
+     * Открывает словарь лемм сайта на время обхода.
+     */
+    public void openDictionary(int siteId) {
+        dictionaries.computeIfAbsent(siteId, this::loadDictionary);
+    }
+
+    @Scheduled(fixedDelayString = "${storage-settings.lemmaFlushIntervalMillis:2000}")
+    public void flushLemmaFrequencies() {
+        for (LemmaDictionary dictionary : dictionaries.values()) {
+            try {
+                flush(dictionary);
+            } catch (DataAccessException e) {
+                log.warn("Lemma frequencies of site {} were not flushed: {}", dictionary.getSiteId(), e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Сбрасывает частоты сайта, удаляет леммы, которые больше не встречаются, и освобождает словарь.
+     * Вызывается, когда запись страниц сайта закончена. Удаляются только леммы, частоты которых
+     * уменьшались при открытом словаре: новые леммы вставляются сразу с частотой 1.
+     * Если частоты не записались, словарь остаётся для следующего сброса, а леммы не удаляются.
+     */
+    public void closeDictionary(int siteId) {
+        LemmaDictionary dictionary = dictionaries.get(siteId);
+        if (dictionary == null) {
+            return;
+        }
+        flush(dictionary);
+        dictionaries.remove(siteId);
+        List<Integer> decrementedIds = dictionary.getDecrementedIds();
+        if (!decrementedIds.isEmpty()) {
+            lemmaRepository.deleteUnusedByIdIn(siteId, decrementedIds);
+        }
+        log.info("Lemma dictionary of site {} closed, {} lemmas checked for deletion", siteId, decrementedIds.size());
+    }
+
+    private LemmaDictionary loadDictionary(int siteId) {
+        Map<String, Integer> existing = new HashMap<>();
+        jdbcTemplate.query("SELECT id, lemma FROM lemma WHERE site_id = ?",
+                rs -> {
+                    existing.put(rs.getString("lemma"), rs.getInt("id"));
+                }, siteId);
+        return new LemmaDictionary(siteId, existing);
+    }
+
+    private Map<String, Integer> registerOccurrences(LemmaDictionary dictionary, Collection<String> lemmas) {
+        Map<String, Integer> lemmaIds = new HashMap<>();
+        List<String> newLemmas = new ArrayList<>();
+        for (String lemma : lemmas) {
+            LemmaDictionary.Entry entry = dictionary.find(lemma);
+            if (entry == null) {
+                newLemmas.add(lemma);
+            } else {
+                entry.addFrequency(1);
+                lemmaIds.put(lemma, entry.getId());
+            }
+        }
+        Set<String> inserted = insertLemmas(dictionary, newLemmas);
+        for (String lemma : newLemmas) {
+            LemmaDictionary.Entry entry = dictionary.find(lemma);
+            if (!inserted.contains(lemma)) {
+                entry.addFrequency(1);
+            }
+            lemmaIds.put(lemma, entry.getId());
+        }
+        return lemmaIds;
+    }
+
+    /**
+     * Одна вставка на страницу: новые леммы создаются, у существующих увеличивается частота.
+     */
+    private Map<String, Integer> incrementFrequencies(int siteId, Collection<String> lemmas) {
+        Map<String, Integer> lemmaIds = new HashMap<>();
+        jdbcTemplate.query(connection -> {
+            PreparedStatement ps = connection.prepareStatement("INSERT INTO lemma (site_id, lemma, frequency) "
+                    + "SELECT ?, unnest(?::varchar[]), 1 "
+                    + "ON CONFLICT (site_id, lemma) DO UPDATE SET frequency = lemma.frequency + 1, postings = NULL "
+                    + "RETURNING id, lemma");
+            ps.setInt(1, siteId);
+            ps.setArray(2, connection.createArrayOf("varchar", lemmas.toArray()));
+            return ps;
+        }, rs -> {
+            lemmaIds.put(rs.getString("lemma"), rs.getInt("id"));
+        });
+        return lemmaIds;
+    }
+
+    /**
+     * Вставляет новые леммы с частотой 1 и добавляет их в словарь. Если ту же лемму одновременно вставил
+     * другой поток или indexPage, побеждает строка в базе: её id перечитывается в словарь.
+     *
+     * @return леммы, вставленные этим вызовом; частоту остальных нужно увеличить через словарь
+     */
+    private Set<String> insertLemmas(LemmaDictionary dictionary, List<String> lemmas) {
+        Set<String> inserted = new HashSet<>();
+        if (lemmas.isEmpty()) {
+            return inserted;
+        }
+        List<Integer> ids = allocateLemmaIds(lemmas.size());
+        jdbcTemplate.query(connection -> {
+            PreparedStatement ps = connection.prepareStatement("INSERT INTO lemma (id, site_id, lemma, frequency) "
+                    + "SELECT unnest(?::int[]), ?, unnest(?::varchar[]), 1 "
+                    + "ON CONFLICT (site_id, lemma) DO NOTHING "
+                    + "RETURNING id, lemma");
+            ps.setArray(1, connection.createArrayOf("integer", ids.toArray()));
+            ps.setInt(2, dictionary.getSiteId());
+            ps.setArray(3, connection.createArrayOf("varchar", lemmas.toArray()));
+            return ps;
+        }, rs -> {
+            inserted.add(rs.getString("lemma"));
+            dictionary.add(rs.getString("lemma"), rs.getInt("id"));
+        });
+        if (inserted.size() == lemmas.size()) {
+            return inserted;
+        }
+        List<String> conflicting = lemmas.stream().filter(lemma -> !inserted.contains(lemma)).toList();
+        jdbcTemplate.query(connection -> {
+            PreparedStatement ps = connection.prepareStatement(
+                    "SELECT id, lemma FROM lemma WHERE site_id = ? AND lemma = ANY (?)");
+            ps.setInt(1, dictionary.getSiteId());
+            ps.setArray(2, connection.createArrayOf("varchar", conflicting.toArray()));
+            return ps;
+        }, rs -> {
+            dictionary.add(rs.getString("lemma"), rs.getInt("id"));
+        });
+        conflicting.stream().filter(lemma -> dictionary.find(lemma) == null).findFirst().ifPresent(lemma -> {
+            throw new IllegalStateException("Лемма " + lemma + " не найдена после вставки");
+        });
+        return inserted;
+    }
+
+    private void flush(LemmaDictionary dictionary) {
+        List<int[]> deltas = dictionary.drainFrequencyDeltas();
+        if (deltas.isEmpty()) {
+            return;
+        }
+        try {
+            jdbcTemplate.batchUpdate("UPDATE lemma SET frequency = frequency + ?, postings = NULL WHERE site_id = ? AND id = ?",
+                    deltas, storageSettings.getIndexBatchSize(), (ps, delta) -> {
+                        ps.setInt(1, delta[1]);
+                        ps.setInt(2, dictionary.getSiteId());
+                        ps.setInt(3, delta[0]);
+                    });
+        } catch (DataAccessException e) {
+            dictionary.restoreFrequencyDeltas(deltas);
+            throw e;
+        }
+    }
+
+    /**
+     * id берутся из последовательности таблицы lemma блоками, чтобы не обращаться к ней на каждую страницу.
+     * id проигравших при конфликте вставок пропадают.
+     */
+    private List<Integer> allocateLemmaIds(int count) {
+        List<Integer> ids = new ArrayList<>(count);
+        synchronized (reservedIds) {
+            while (ids.size() < count) {
+                if (reservedIds.isEmpty()) {
+                    reservedIds.addAll(jdbcTemplate.queryForList(
+                            "SELECT nextval(pg_get_serial_sequence('lemma', 'id'))::int FROM generate_series(1, ?)",
+                            Integer.class, Math.max(storageSettings.getLemmaIdBlockSize(), count - ids.size())));
                 }
-                Float rank = entry.getValue().floatValue();
-                IndexDto indexDto = new IndexDto();
-                indexDto.setPage(pageId);
-                indexDto.setLemma(lemmaRepository.findLemmaByLemmaAndSiteId(entry.getKey(), siteId).get().getId());
-                indexDto.setRank(rank);
-                indexList.add(indexDto);
+                ids.add(reservedIds.poll());
             }
         }
-        return indexList;
+        return ids;
     }
 
     public List<String> removeCommonLemmas(List<String> lemmas) {
@@ -81,4 +328,47 @@ public class LemmaCRUDService {
         List<Lemma> sortedLemmas = lemmaRepository.findByLemmaInAndSiteIdOrderByFrequencyAsc(lemmas, siteId);
         return sortedLemmas.stream().map(LemmaCRUDService::mapToDto).toList();
     }
+
+    /**
+     * Собирает строки индекса, упорядоченные по лемме и странице, в сжатые списки для UPDATE.
+     */
+    private static class PostingsCollector implements RowCallbackHandler {
+        private final List<Object[]> batch = new ArrayList<>();
+        private final int siteId;
+        private int lemmaId = -1;
+        private int size;
+        private int[] pageIds = new int[16];
+        private float[] ranks = new float[16];
+
+        PostingsCollector(int siteId) {
+            this.siteId = siteId;
+        }
+
+        @Override
+        public void processRow(ResultSet rs) throws SQLException {
+            if (rs.getInt(1) != lemmaId) {
+                addCurrent();
+                lemmaId = rs.getInt(1);
+            }
+            if (size == pageIds.length) {
+                pageIds = Arrays.copyOf(pageIds, size * 2);
+                ranks = Arrays.copyOf(ranks, size * 2);
+            }
+            pageIds[size] = rs.getInt(2);
+            ranks[size++] = rs.getFloat(3);
+        }
+
+        List<Object[]> finish() {
+            addCurrent();
+            return batch;
+        }
+
+        private void addCurrent() {
+            if (size > 0) {
+                Postings postings = new Postings(Arrays.copyOf(pageIds, size), Arrays.copyOf(ranks, size));
+                batch.add(new Object[]{PostingsCodec.encode(postings), siteId, lemmaId});
+                size = 0;
+            }
+        }
+    }
 }
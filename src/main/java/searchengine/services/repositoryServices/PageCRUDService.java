@@ -2,15 +2,19 @@ package searchengine.services.repositoryServices;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.jsoup.nodes.Document;
 import org.springframework.stereotype.Service;
 import searchengine.dto.indexing.PageDto;
 import searchengine.dto.indexing.SiteDto;
 import searchengine.model.Page;
 import searchengine.model.Site;
+import searchengine.repositories.PageBodyRepository;
 import searchengine.repositories.PageRepository;
 import searchengine.repositories.SiteRepository;
+import searchengine.services.utilities.ContentHash;
+import searchengine.services.utilities.PageBodyCodec;
+import searchengine.services.utilities.ParsedPage;
 
+import java.nio.charset.StandardCharsets;
 import java.time.Instant;
 import java.util.List;
 import java.util.Optional;
@@ -21,6 +25,7 @@ import java.util.Optional;
 public class PageCRUDService {
     private final PageRepository pageRepository;
     private final SiteRepository siteRepository;
+    private final PageBodyRepository pageBodyRepository;
 
     public PageDto getByUrlAndSiteId(String path, Integer site) {
         Optional<Page> page = pageRepository.findByPathAndSiteId(path, site);
@@ -34,21 +39,112 @@ public class PageCRUDService {
         Page page = mapToModel(pageDto);
         page.setSite(site);
         pageRepository.save(page);
+        storeBody(pageDto);
     }
 
-    public PageDto createPageDto(String link, Document document, int statusCode, SiteDto siteDto) {
+    public void update(PageDto pageDto) {
+        Page page = pageRepository.findById(pageDto.getId()).orElseThrow();
+        String previousBodyHash = page.getBodyHash();
+        page.setCode(pageDto.getCode());
+        page.setContent(null);
+        page.setBodyHash(pageDto.getBodyHash());
+        page.setTitle(pageDto.getTitle());
+        page.setText(pageDto.getText());
+        page.setPositions(pageDto.getPositions());
+        page.setEtag(pageDto.getEtag());
+        page.setLastModified(pageDto.getLastModified());
+        page.setContentHash(pageDto.getContentHash());
+        page.setSimHash(pageDto.getSimHash());
+        page.setDuplicateOf(pageDto.getDuplicateOf());
+        pageRepository.save(page);
+        storeBody(pageDto);
+        if (previousBodyHash != null && !previousBodyHash.equals(pageDto.getBodyHash())) {
+            releaseBody(previousBodyHash);
+        }
+    }
+
+    /**
+     * Удаляет прежнее тело переписанной страницы, если на него не ссылаются другие страницы.
+     * Полная очистка page_body остаётся за удалением поколений сайта.
+     */
+    private void releaseBody(String bodyHash) {
+        pageBodyRepository.deleteIfUnreferenced(bodyHash);
+    }
+
+    /**
+     * Тело страницы хранится сжатым в page_body по SHA-256, одинаковые тела сохраняются один раз.
+     * Строка page сохраняется раньше тела, чтобы deleteUnusedBodies не удалил только что записанное тело.
+     */
+    private void storeBody(PageDto pageDto) {
+        if (pageDto.getContent() == null || pageDto.getBodyHash() == null) {
+            return;
+        }
+        byte[] body = pageDto.getContent().getBytes(StandardCharsets.UTF_8);
+        pageBodyRepository.insertIfAbsent(pageDto.getBodyHash(), PageBodyCodec.compress(body), body.length);
+    }
+
+    public String getBody(PageDto pageDto) {
+        if (pageDto.getContent() != null || pageDto.getBodyHash() == null) {
+            return pageDto.getContent();
+        }
+        return pageBodyRepository.findById(pageDto.getBodyHash())
+                .map(body -> PageBodyCodec.decompress(body.getData(), body.getSize()))
+                .orElse(null);
+    }
+
+    public void deleteUnusedBodies() {
+        int count = pageBodyRepository.deleteUnreferenced();
+        log.info("{} unused page bodies were deleted", count);
+    }
+
+    public PageDto createPageDto(String link, ParsedPage page, int statusCode, SiteDto siteDto) {
         PageDto pageDto = new PageDto();
-        pageDto.setSite(siteRepository.findSiteByUrl(siteDto.getUrl()).getId());
+        pageDto.setSite(siteDto.getId());
         pageDto.setPath(link.substring(siteDto.getUrl().length() - 1));
         pageDto.setCode(statusCode);
-        pageDto.setContent(document.html());
+        pageDto.setContent(page.getBody());
+        pageDto.setBodyHash(ContentHash.sha256(page.getBody()));
+        pageDto.setTitle(page.getTitle());
+        pageDto.setText(page.getText());
+        pageDto.setContentHash(ContentHash.sha256(page.getText()));
         return pageDto;
     }
 
+    public PageDto getValidators(String path, Integer siteId) {
+        return pageRepository.findValidatorsByPathAndSiteId(path, siteId).map(validators -> {
+            PageDto pageDto = new PageDto();
+            pageDto.setPath(path);
+            pageDto.setSite(siteId);
+            pageDto.setEtag(validators.getEtag());
+            pageDto.setLastModified(validators.getLastModified());
+            return pageDto;
+        }).orElse(null);
+    }
+
+    public List<String> getPathsBySiteId(Integer siteId) {
+        return pageRepository.findPathsBySiteId(siteId);
+    }
+
+    public List<PageRepository.SimHashEntry> getSimHashesBySiteId(Integer siteId) {
+        return pageRepository.findSimHashesBySiteId(siteId);
+    }
+
+    public void markDuplicate(Integer id, Integer duplicateOf) {
+        pageRepository.updateDuplicateOf(id, duplicateOf);
+    }
+
+    public List<PageDto> getDuplicatesOf(Integer id) {
+        return pageRepository.findByDuplicateOf(id).stream().map(this::mapToDto).toList();
+    }
+
     public void deleteById(Integer id) {
-        if (pageRepository.existsById(id)) {
-            pageRepository.deleteById(id);
-        }
+        pageRepository.findById(id).ifPresent(page -> {
+            pageRepository.clearDuplicatesOf(id);
+            pageRepository.delete(page);
+            if (page.getBodyHash() != null) {
+                releaseBody(page.getBodyHash());
+            }
+        });
     }
 
     public List<PageDto> findPagesByIds(List<Integer> ids) {
@@ -66,6 +162,15 @@ public class PageCRUDService {
         pageDto.setPath(page.getPath());
         pageDto.setCode(page.getCode());
         pageDto.setContent(page.getContent());
+        pageDto.setBodyHash(page.getBodyHash());
+        pageDto.setTitle(page.getTitle());
+        pageDto.setText(page.getText());
+        pageDto.setPositions(page.getPositions());
+        pageDto.setEtag(page.getEtag());
+        pageDto.setLastModified(page.getLastModified());
+        pageDto.setContentHash(page.getContentHash());
+        pageDto.setSimHash(page.getSimHash());
+        pageDto.setDuplicateOf(page.getDuplicateOf());
         return pageDto;
     }
 
@@ -74,7 +179,15 @@ public class PageCRUDService {
         page.setId(pageDto.getId());
         page.setPath(pageDto.getPath());
         page.setCode(pageDto.getCode());
-        page.setContent(pageDto.getContent());
+        page.setBodyHash(pageDto.getBodyHash());
+        page.setTitle(pageDto.getTitle());
+        page.setText(pageDto.getText());
+        page.setPositions(pageDto.getPositions());
+        page.setEtag(pageDto.getEtag());
+        page.setLastModified(pageDto.getLastModified());
+        page.setContentHash(pageDto.getContentHash());
+        page.setSimHash(pageDto.getSimHash());
+        page.setDuplicateOf(pageDto.getDuplicateOf());
         return page;
     }
 }
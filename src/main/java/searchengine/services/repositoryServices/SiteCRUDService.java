@@ -2,14 +2,16 @@ package searchengine.services.repositoryServices;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
 import searchengine.dto.indexing.SiteDto;
 import searchengine.model.Site;
 import searchengine.model.Status;
 import searchengine.repositories.SiteRepository;
 
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 @Service
@@ -17,24 +19,95 @@ import java.util.List;
 @Slf4j
 public class SiteCRUDService {
 
+    private static final List<String> PARTITIONED_TABLES = List.of("page", "lemma", "index_table");
+
     private final SiteRepository siteRepository;
+    private final JdbcTemplate jdbcTemplate;
 
+    /**
+     * @return последнее поколение сайта: то, в которое идёт или шла индексация
+     */
     public SiteDto getByUrl(String url) {
         if (!siteRepository.existsSiteByUrl(url)) {
             log.warn("Site " + url + " was not found.");
             return null;
         } else {
-            Site site = siteRepository.findSiteByUrl(url);
+            Site site = siteRepository.findFirstByUrlOrderByIdDesc(url);
             return mapToDto(site);
         }
     }
 
+    /**
+     * @return поколение сайта, по которому выполняется поиск
+     */
+    public SiteDto getActiveByUrl(String url) {
+        Site site = siteRepository.findSiteByUrlAndActiveTrue(url);
+        return site == null ? null : mapToDto(site);
+    }
+
+    /**
+     * Одним запросом делает поколение активным, а остальные поколения сайта — неактивными.
+     */
+    public void activate(SiteDto siteDto) {
+        siteRepository.activate(siteDto.getUrl(), siteDto.getId());
+        siteDto.setActive(true);
+        log.info("Generation {} of site {} activated", siteDto.getId(), siteDto.getUrl());
+    }
+
+    /**
+     * @return id удалённых поколений
+     */
+    public List<Integer> deleteInactiveGenerations(String url) {
+        List<Integer> siteIds = siteRepository.findInactiveIdsByUrl(url);
+        siteIds.forEach(this::dropPartitions);
+        int count = siteRepository.deleteInactiveByUrl(url);
+        log.info("{} inactive generations of site {} were deleted", count, url);
+        return siteIds;
+    }
+
     public void create(SiteDto siteDto) {
-        Site site = mapToModel(siteDto);
-        siteRepository.save(site);
+        Site site = siteRepository.save(mapToModel(siteDto));
+        siteDto.setId(site.getId());
+        createPartitions(site.getId());
         log.info("Create" + siteDto.getUrl());
     }
 
+    /**
+     * @return имя секции таблицы page, lemma или index_table с данными поколения сайта
+     */
+    public static String partitionName(String table, int siteId) {
+        return table + "_site_" + siteId;
+    }
+
+    private void createPartitions(int siteId) {
+        for (String table : PARTITIONED_TABLES) {
+            jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS " + partitionName(table, siteId)
+                    + " PARTITION OF " + table + " FOR VALUES IN (" + siteId + ")");
+        }
+    }
+
+    /**
+     * Данные поколения удаляются целыми секциями, а не построчно каскадом от строки site.
+     * Секция index_table удаляется первой: её внешние ключи ссылаются на секции page и lemma.
+     * DETACH CONCURRENTLY не блокирует чтение и запись других секций, но не работает внутри транзакции,
+     * поэтому метод нельзя вызывать из @Transactional. Прерванное отсоединение завершается через FINALIZE.
+     */
+    private void dropPartitions(int siteId) {
+        List<String> tables = new ArrayList<>(PARTITIONED_TABLES);
+        Collections.reverse(tables);
+        for (String table : tables) {
+            String partition = partitionName(table, siteId);
+            List<Boolean> detachPending = jdbcTemplate.queryForList(
+                    "SELECT inhdetachpending FROM pg_inherits WHERE inhrelid = to_regclass(?)", Boolean.class, partition);
+            if (!detachPending.isEmpty()) {
+                jdbcTemplate.execute("ALTER TABLE " + table + " DETACH PARTITION " + partition
+                        + (detachPending.get(0) ? " FINALIZE" : " CONCURRENTLY"));
+            }
+            jdbcTemplate.execute("DROP TABLE IF EXISTS " + partition);
+        }
+        log.info("Partitions of site {} were dropped", siteId);
+    }
+
     public void update(SiteDto siteDto) {
         if (!siteRepository.existsSiteByUrl(siteDto.getUrl())) {
             log.warn("Site ".concat(siteDto.getUrl()).concat(" was not found."));
@@ -44,19 +117,15 @@ public class SiteCRUDService {
         }
     }
 
-    @Transactional
-    public void deleteByUrl(String url) {
-        if (siteRepository.existsSiteByUrl(url)) {
-            siteRepository.deleteSiteByUrl(url);
-        }
-    }
-
     public int countNumberOfSitesInDB() {
-        return (int) siteRepository.count();
+        return (int) siteRepository.countUrls();
     }
 
+    /**
+     * @return последнее поколение каждого сайта
+     */
     public List<Site> getAllSites() {
-        return siteRepository.findAll();
+        return siteRepository.findLatestGenerations();
     }
 
     public SiteDto createSiteDto(searchengine.config.Site site) {
@@ -66,6 +135,7 @@ public class SiteCRUDService {
         siteDto.setLastError(null);
         siteDto.setUrl(site.getUrl());
         siteDto.setName(site.getName());
+        siteDto.setActive(true);
         return siteDto;
     }
 
@@ -77,6 +147,7 @@ public class SiteCRUDService {
         site.setLastError(siteDto.getLastError());
         site.setUrl(siteDto.getUrl());
         site.setName(siteDto.getName());
+        site.setActive(siteDto.isActive());
         return site;
     }
 
@@ -88,6 +159,7 @@ public class SiteCRUDService {
         siteDto.setLastError(site.getLastError());
         siteDto.setUrl(site.getUrl());
         siteDto.setName(site.getName());
+        siteDto.setActive(site.isActive());
         return siteDto;
     }
 }
@@ -0,0 +1,43 @@
+package searchengine.services.utilities;
+
+/**
+ * Накапливает строки в текстовом формате COPY (поля через табуляцию, строка на запись).
+ * Подходит только для числовых полей: экранирование не выполняется.
+ */
+public class CopyBuffer {
+    private final int capacity;
+    private StringBuilder rows = new StringBuilder();
+    private int size;
+
+    public CopyBuffer(int capacity) {
+        this.capacity = Math.max(1, capacity);
+    }
+
+    /**
+     * @return true, если буфер заполнен и его пора отправить
+     */
+    public synchronized boolean append(Number... values) {
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) {
+                rows.append('\t');
+            }
+            rows.append(values[i]);
+        }
+        rows.append('\n');
+        return ++size >= capacity;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Забирает накопленные строки и очищает буфер.
+     */
+    public synchronized String drain() {
+        String result = rows.toString();
+        rows = new StringBuilder();
+        size = 0;
+        return result;
+    }
+}
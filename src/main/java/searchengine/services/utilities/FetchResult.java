@@ -0,0 +1,24 @@
+package searchengine.services.utilities;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+@Getter
+@RequiredArgsConstructor
+public class FetchResult {
+    private final int statusCode;
+    private final String contentType;
+    private final String retryAfter;
+    private final String etag;
+    private final String lastModified;
+    private final String body;
+
+    public boolean isNotModified() {
+        return statusCode == 304;
+    }
+
+    public boolean isHtml() {
+        String type = contentType == null ? "text/html" : contentType;
+        return type.contains("text/html") || type.contains("xml");
+    }
+}
@@ -0,0 +1,97 @@
+package searchengine.services.utilities;
+
+/**
+ * Множество 64-битных отпечатков URL на открытой адресации без упаковки в Long:
+ * около 16 байт на адрес против сотен байт для строки в ConcurrentHashMap.
+ */
+public class FingerprintSet implements VisitedUrls {
+    private static final int SEGMENT_COUNT = 16;
+    private final Segment[] segments = new Segment[SEGMENT_COUNT];
+
+    public FingerprintSet(int expectedSize) {
+        int segmentCapacity = Math.max(16, expectedSize / SEGMENT_COUNT);
+        for (int i = 0; i < SEGMENT_COUNT; i++) {
+            segments[i] = new Segment(segmentCapacity);
+        }
+    }
+
+    @Override
+    public boolean add(long fingerprint) {
+        return segments[(int) (fingerprint >>> 60)].add(fingerprint);
+    }
+
+    @Override
+    public long size() {
+        long size = 0;
+        for (Segment segment : segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    @Override
+    public double falsePositiveRate() {
+        return 0;
+    }
+
+    private static class Segment {
+        private static final double MAX_LOAD_FACTOR = 0.6;
+        private long[] table;
+        private int size;
+        private boolean containsZero;
+
+        Segment(int expectedSize) {
+            table = new long[tableSizeFor((int) (expectedSize / MAX_LOAD_FACTOR) + 1)];
+        }
+
+        synchronized boolean add(long value) {
+            if (value == 0) {
+                if (containsZero) {
+                    return false;
+                }
+                containsZero = true;
+                size++;
+                return true;
+            }
+            if (!insert(table, value)) {
+                return false;
+            }
+            if (++size > table.length * MAX_LOAD_FACTOR) {
+                resize();
+            }
+            return true;
+        }
+
+        synchronized int size() {
+            return size;
+        }
+
+        private void resize() {
+            long[] resized = new long[table.length * 2];
+            for (long value : table) {
+                if (value != 0) {
+                    insert(resized, value);
+                }
+            }
+            table = resized;
+        }
+
+        private static boolean insert(long[] table, long value) {
+            int mask = table.length - 1;
+            int slot = (int) UrlFingerprint.mix(value) & mask;
+            while (table[slot] != 0) {
+                if (table[slot] == value) {
+                    return false;
+                }
+                slot = (slot + 1) & mask;
+            }
+            table[slot] = value;
+            return true;
+        }
+
+        private static int tableSizeFor(int capacity) {
+            int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+            return Math.max(16, size);
+        }
+    }
+}
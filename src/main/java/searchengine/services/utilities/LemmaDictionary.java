@@ -0,0 +1,87 @@
+package searchengine.services.utilities;
+
+import lombok.Getter;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Леммы одного сайта в памяти: id уже сохранённых лемм известны без обращения к базе, изменения частоты
+ * копятся в счётчиках и периодически сбрасываются в таблицу lemma.
+ */
+public class LemmaDictionary {
+    @Getter
+    private final int siteId;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final Set<Integer> decrementedIds = ConcurrentHashMap.newKeySet();
+
+    public LemmaDictionary(int siteId, Map<String, Integer> existingIds) {
+        this.siteId = siteId;
+        existingIds.forEach((lemma, id) -> entries.put(lemma, new Entry(id, lemma)));
+    }
+
+    public Entry find(String lemma) {
+        return entries.get(lemma);
+    }
+
+    /**
+     * Запоминает лемму, уже сохранённую в базе.
+     */
+    public Entry add(String lemma, int id) {
+        return entries.computeIfAbsent(lemma, key -> new Entry(id, key));
+    }
+
+    /**
+     * Леммы, частоты которых уменьшались, пока словарь открыт: только среди них при закрытии
+     * ищутся неиспользуемые.
+     */
+    public void markDecremented(Collection<Integer> lemmaIds) {
+        decrementedIds.addAll(lemmaIds);
+    }
+
+    public List<Integer> getDecrementedIds() {
+        return new ArrayList<>(decrementedIds);
+    }
+
+    /**
+     * Забирает накопленные изменения частоты, счётчики обнуляются.
+     */
+    public List<int[]> drainFrequencyDeltas() {
+        List<int[]> deltas = new ArrayList<>();
+        for (Entry entry : entries.values()) {
+            int delta = entry.frequencyDelta.getAndSet(0);
+            if (delta != 0) {
+                deltas.add(new int[]{entry.id, delta});
+            }
+        }
+        return deltas;
+    }
+
+    public void restoreFrequencyDeltas(List<int[]> deltas) {
+        Map<Integer, Entry> byId = new HashMap<>();
+        entries.values().forEach(entry -> byId.put(entry.id, entry));
+        deltas.forEach(delta -> byId.get(delta[0]).addFrequency(delta[1]));
+    }
+
+    @Getter
+    public static class Entry {
+        private final int id;
+        private final String lemma;
+        private final AtomicInteger frequencyDelta = new AtomicInteger();
+
+        Entry(int id, String lemma) {
+            this.id = id;
+            this.lemma = lemma;
+        }
+
+        public void addFrequency(int delta) {
+            frequencyDelta.addAndGet(delta);
+        }
+    }
+}
@@ -4,75 +4,134 @@ import com.github.demidko.aot.WordformMeaning;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.lucene.morphology.LuceneMorphology;
 import org.apache.lucene.morphology.russian.RussianLuceneMorphology;
+import org.springframework.stereotype.Component;
+import searchengine.config.MorphologySettings;
 
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import static com.github.demidko.aot.WordformMeaning.lookupForMeanings;
 
+/**
+ * Лемматизатор, общий для потоков индексации и поиска. Словарь морфологии загружается один раз,
+ * разбор словоформ кэшируется; когда кэш заполнен, он очищается и набирается заново.
+ */
 @Slf4j
+@Component
 public class LemmaFinder {
     private final LuceneMorphology luceneMorphology;
+    private final int cacheSize;
+    private final Map<String, WordForm> cache = new ConcurrentHashMap<>();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
     private static final String WORD_TYPE_REGEX = "\\W\\w&&[^а-яА-Я\\s]";
     private static final String[] particlesNames = new String[]{"МЕЖД", "ПРЕДЛ", "СОЮЗ", "ЧАСТ"};
+    /**
+     * Слово текста — непрерывная последовательность русских букв, по ней же нумеруются позиции.
+     */
+    public static final Pattern WORD = Pattern.compile("[а-яА-Я]+");
 
-    public static LemmaFinder getInstance() throws IOException {
-        LuceneMorphology morphology = new RussianLuceneMorphology();
-        return new LemmaFinder(morphology);
+    public LemmaFinder(MorphologySettings morphologySettings) throws IOException {
+        this.luceneMorphology = new RussianLuceneMorphology();
+        this.cacheSize = morphologySettings.getCacheSize();
     }
 
-    private LemmaFinder(LuceneMorphology luceneMorphology) {
-        this.luceneMorphology = luceneMorphology;
+    public Map<String, Integer> collectLemmas(String text) {
+        return collectPositions(text).getCounts();
     }
 
-    public Map<String, Integer> collectLemmas(String text) {
-        String[] words = arrayContainsRussianWords(removeHtmlTags(text));
-        HashMap<String, Integer> lemmas = new HashMap<>();
-        for (String word : words) {
-            if (word.isBlank() || !isCorrectWordForm(word)) {
-                continue;
-            }
-            List<String> wordBaseForms = luceneMorphology.getMorphInfo(word);
-            if (anyWordBaseBelongToParticle(wordBaseForms)) {
-                continue;
-            }
-            List<String> normalForms = luceneMorphology.getNormalForms(word);
-            if (normalForms.isEmpty()) {
-                continue;
-            }
-            String normalWord = normalForms.get(0);
-            if (lemmas.containsKey(normalWord)) {
-                lemmas.put(normalWord, lemmas.get(normalWord) + 1);
-            } else {
-                lemmas.put(normalWord, 1);
+    /**
+     * Номер слова считается по всем словам текста, включая пропущенные служебные,
+     * поэтому разность номеров равна расстоянию между словами в тексте.
+     */
+    public TermPositions collectPositions(String text) {
+        Map<String, List<Integer>> lemmas = new HashMap<>();
+        Matcher matcher = WORD.matcher(text);
+        int position = 0;
+        while (matcher.find()) {
+            String lemma = getNormalForm(matcher.group().toLowerCase(Locale.ROOT));
+            if (lemma != null) {
+                lemmas.computeIfAbsent(lemma, key -> new ArrayList<>()).add(position);
             }
+            position++;
         }
-        return lemmas;
+        Map<String, int[]> positions = new HashMap<>(lemmas.size() * 2);
+        lemmas.forEach((lemma, list) -> positions.put(lemma, list.stream().mapToInt(Integer::intValue).toArray()));
+        return new TermPositions(positions);
     }
 
-    private static String removeHtmlTags(String htmlContent) {
-        if (htmlContent == null) {
-            return null;
-        }
-        return htmlContent.replaceAll("<[^>]*>", "");
+    private String getNormalForm(String word) {
+        WordForm wordForm = analyze(word);
+        return wordForm.isLemma() ? wordForm.normalForms.get(0) : null;
     }
 
     public Set<String> getLemmaSet(String text) {
-        String[] textArray = arrayContainsRussianWords(removeHtmlTags(text));
+        String[] textArray = arrayContainsRussianWords(text);
         Set<String> lemmaSet = new HashSet<>();
         for (String word : textArray) {
-            if (word.isBlank() && !isCorrectWordForm(word)) {
+            if (word.isBlank()) {
                 continue;
             }
-            List<String> wordBaseForms = luceneMorphology.getMorphInfo(word);
-            if (anyWordBaseBelongToParticle(wordBaseForms)) {
-                continue;
+            WordForm wordForm = analyze(word);
+            if (wordForm.isLemma()) {
+                lemmaSet.addAll(wordForm.normalForms);
             }
-            lemmaSet.addAll(luceneMorphology.getNormalForms(word));
         }
         return lemmaSet;
     }
 
+    /**
+     * @return доля разборов словоформ, взятых из кэша, с момента запуска
+     */
+    public double getCacheHitRate() {
+        long hitCount = hits.sum();
+        long total = hitCount + misses.sum();
+        return total == 0 ? 0 : (double) hitCount / total;
+    }
+
+    public int getCacheSize() {
+        return cache.size();
+    }
+
+    private WordForm analyze(String word) {
+        WordForm cached = cache.get(word);
+        if (cached != null) {
+            hits.increment();
+            return cached;
+        }
+        misses.increment();
+        WordForm wordForm = parseWordForm(word);
+        if (cache.size() >= cacheSize) {
+            log.info("Morphology cache is full ({} word forms, hit rate {}), clearing",
+                    cache.size(), String.format(Locale.ROOT, "%.3f", getCacheHitRate()));
+            cache.clear();
+        }
+        cache.put(word, wordForm);
+        return wordForm;
+    }
+
+    /**
+     * Морфологическая информация имеет вид "нормальная форма|характеристики",
+     * поэтому проверки и нормальные формы получаются из одного обращения к словарю.
+     */
+    private WordForm parseWordForm(String word) {
+        List<String> morphInfo = luceneMorphology.getMorphInfo(word);
+        boolean lemma = isCorrectWordForm(morphInfo) && !anyWordBaseBelongToParticle(morphInfo);
+        List<String> normalForms = new ArrayList<>(morphInfo.size());
+        for (String info : morphInfo) {
+            int separator = info.indexOf('|');
+            String normalForm = separator >= 0 ? info.substring(0, separator) : info;
+            if (!normalForms.contains(normalForm)) {
+                normalForms.add(normalForm);
+            }
+        }
+        return new WordForm(lemma && !normalForms.isEmpty(), List.copyOf(normalForms));
+    }
+
     private boolean anyWordBaseBelongToParticle(List<String> wordBaseForms) {
         return wordBaseForms.stream().anyMatch(this::hasParticleProperty);
     }
@@ -93,8 +152,7 @@ public class LemmaFinder {
                 .split("\\s+");
     }
 
-    private boolean isCorrectWordForm(String word) {
-        List<String> wordInfo = luceneMorphology.getMorphInfo(word);
+    private boolean isCorrectWordForm(List<String> wordInfo) {
         for (String morphInfo : wordInfo) {
             if (morphInfo.matches(WORD_TYPE_REGEX)) {
                 return false;
@@ -112,4 +170,20 @@ public class LemmaFinder {
         return wordForms;
     }
 
+    private static class WordForm {
+        /**
+         * false для служебных слов и неподходящих словоформ.
+         */
+        private final boolean lemma;
+        private final List<String> normalForms;
+
+        WordForm(boolean lemma, List<String> normalForms) {
+            this.lemma = lemma;
+            this.normalForms = normalForms;
+        }
+
+        boolean isLemma() {
+            return lemma;
+        }
+    }
 }
@@ -0,0 +1,47 @@
+package searchengine.services.utilities;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+public final class PageBodyCodec {
+    private static final int BUFFER_SIZE = 8192;
+
+    private PageBodyCodec() {
+    }
+
+    public static byte[] compress(byte[] input) {
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+        try {
+            deflater.setInput(input);
+            deflater.finish();
+            ByteArrayOutputStream output = new ByteArrayOutputStream(Math.max(64, input.length / 4));
+            byte[] buffer = new byte[BUFFER_SIZE];
+            while (!deflater.finished()) {
+                output.write(buffer, 0, deflater.deflate(buffer));
+            }
+            return output.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    public static String decompress(byte[] data, int size) {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(data);
+            byte[] output = new byte[size];
+            int length = 0;
+            while (length < size && !inflater.finished()) {
+                length += inflater.inflate(output, length, size - length);
+            }
+            return new String(output, 0, length, StandardCharsets.UTF_8);
+        } catch (DataFormatException e) {
+            throw new IllegalStateException("Повреждённое тело страницы", e);
+        } finally {
+            inflater.end();
+        }
+    }
+}
@@ -0,0 +1,282 @@
+package searchengine.services.utilities;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import searchengine.config.ConnectionProfile;
+
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Общий HTTP-клиент для краулеров, indexPage, robots.txt и sitemap. Соединения с хостом
+ * переиспользуются между запросами, число одновременных соединений с одним хостом ограничено.
+ */
+@Slf4j
+@Component
+public class PageFetcher {
+    private static final Pattern CHARSET = Pattern.compile("charset\\s*=\\s*[\"']?([\\w.:-]+)", Pattern.CASE_INSENSITIVE);
+    private static final int CHARSET_SNIFF_BYTES = 2048;
+
+    private final ConnectionProfile connectionProfile;
+    private final HttpClient httpClient;
+    private final Map<String, HostLimiter> limiters = new ConcurrentHashMap<>();
+
+    public PageFetcher(ConnectionProfile connectionProfile) {
+        this.connectionProfile = connectionProfile;
+        this.httpClient = HttpClient.newBuilder()
+                .version(connectionProfile.isHttp2() ? HttpClient.Version.HTTP_2 : HttpClient.Version.HTTP_1_1)
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .connectTimeout(Duration.ofMillis(connectionProfile.getConnectTimeoutMillis()))
+                .build();
+    }
+
+    public String getUserAgent() {
+        return connectionProfile.getUserAgent();
+    }
+
+    public FetchResult fetch(String url) throws IOException, InterruptedException {
+        return fetch(url, null, null);
+    }
+
+    public FetchResult fetch(String url, String ifNoneMatch, String ifModifiedSince) throws IOException, InterruptedException {
+        try {
+            return fetchAsync(url, ifNoneMatch, ifModifiedSince).get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException ioException) {
+                throw ioException;
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+
+    public CompletableFuture<FetchResult> fetchAsync(String url, String ifNoneMatch, String ifModifiedSince) {
+        CompletableFuture<FetchResult> result = new CompletableFuture<>();
+        HttpRequest request;
+        try {
+            HttpRequest.Builder builder = newRequest(url);
+            if (ifNoneMatch != null) {
+                builder.header("If-None-Match", ifNoneMatch);
+            }
+            if (ifModifiedSince != null) {
+                builder.header("If-Modified-Since", ifModifiedSince);
+            }
+            request = builder.GET().build();
+        } catch (IllegalArgumentException e) {
+            result.completeExceptionally(new IOException("Некорректный адрес: " + url, e));
+            return result;
+        }
+        HostLimiter limiter;
+        try {
+            limiter = limiter(request.uri());
+        } catch (IOException e) {
+            result.completeExceptionally(e);
+            return result;
+        }
+        Runnable send = () -> httpClient.sendAsync(request, HttpResponse.BodyHandlers.ofByteArray())
+                .whenComplete((response, e) -> {
+                    limiter.release();
+                    if (e != null) {
+                        result.completeExceptionally(e);
+                        return;
+                    }
+                    try {
+                        result.complete(toResult(response));
+                    } catch (IOException decodingException) {
+                        result.completeExceptionally(decodingException);
+                    }
+                });
+        if (limiter.tryAcquire(send)) {
+            send.run();
+        }
+        return result;
+    }
+
+    /**
+     * Тело ответа без буферизации целиком, для больших файлов вроде sitemap.
+     * Соединение с хостом занято, пока поток не закрыт.
+     */
+    public InputStream openStream(String url) throws IOException, InterruptedException {
+        HttpRequest request;
+        try {
+            request = newRequest(url).GET().build();
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Некорректный адрес: " + url, e);
+        }
+        HostLimiter limiter = limiter(request.uri());
+        limiter.acquire();
+        try {
+            HttpResponse<InputStream> response = httpClient.send(request, HttpResponse.BodyHandlers.ofInputStream());
+            if (response.statusCode() >= 400) {
+                response.body().close();
+                throw new IOException("Код ответа " + response.statusCode() + " для " + url);
+            }
+            return new FilterInputStream(decode(response.body(), response.headers())) {
+                private boolean closed;
+
+                @Override
+                public void close() throws IOException {
+                    try {
+                        super.close();
+                    } finally {
+                        if (!closed) {
+                            closed = true;
+                            limiter.release();
+                        }
+                    }
+                }
+            };
+        } catch (IOException | InterruptedException | RuntimeException e) {
+            limiter.release();
+            throw e;
+        }
+    }
+
+    private HostLimiter limiter(URI uri) throws IOException {
+        if (uri.getHost() == null) {
+            throw new IOException("В адресе нет хоста: " + uri);
+        }
+        return limiters.computeIfAbsent(uri.getHost().toLowerCase(Locale.ROOT),
+                host -> new HostLimiter(connectionProfile.getMaxConnectionsPerHost()));
+    }
+
+    private HttpRequest.Builder newRequest(String url) {
+        HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create(url))
+                .timeout(Duration.ofMillis(connectionProfile.getReadTimeoutMillis()))
+                .header("User-Agent", connectionProfile.getUserAgent());
+        if (connectionProfile.getReferrer() != null) {
+            builder.header("Referer", connectionProfile.getReferrer());
+        }
+        if (connectionProfile.isCompression()) {
+            builder.header("Accept-Encoding", "gzip, deflate");
+        }
+        return builder;
+    }
+
+    private FetchResult toResult(HttpResponse<byte[]> response) throws IOException {
+        HttpHeaders headers = response.headers();
+        String contentType = headers.firstValue("Content-Type").orElse(null);
+        byte[] bytes;
+        try (InputStream stream = decode(new ByteArrayInputStream(response.body()), headers)) {
+            bytes = stream.readAllBytes();
+        }
+        return new FetchResult(response.statusCode(), contentType,
+                headers.firstValue("Retry-After").orElse(null),
+                headers.firstValue("ETag").orElse(null),
+                headers.firstValue("Last-Modified").orElse(null),
+                decodeBody(bytes, contentType));
+    }
+
+    public static String decodeBody(byte[] body, String contentType) {
+        return new String(body, charsetOf(contentType, body));
+    }
+
+    private static InputStream decode(InputStream body, HttpHeaders headers) throws IOException {
+        String encoding = headers.firstValue("Content-Encoding").orElse("").trim().toLowerCase(Locale.ROOT);
+        if (encoding.equals("gzip") || encoding.equals("x-gzip")) {
+            return new GZIPInputStream(body);
+        }
+        if (encoding.equals("deflate")) {
+            return new InflaterInputStream(body);
+        }
+        return body;
+    }
+
+    private static Charset charsetOf(String contentType, byte[] body) {
+        String declared = null;
+        Matcher header = contentType == null ? null : CHARSET.matcher(contentType);
+        if (header != null && header.find()) {
+            declared = header.group(1);
+        } else {
+            Matcher meta = CHARSET.matcher(new String(body, 0, Math.min(body.length, CHARSET_SNIFF_BYTES),
+                    StandardCharsets.ISO_8859_1));
+            if (meta.find()) {
+                declared = meta.group(1);
+            }
+        }
+        try {
+            return declared == null ? StandardCharsets.UTF_8 : Charset.forName(declared);
+        } catch (IllegalArgumentException e) {
+            log.debug("Unknown charset {}", declared);
+            return StandardCharsets.UTF_8;
+        }
+    }
+
+    private static class HostLimiter {
+        private final int maxConnections;
+        private final Deque<Runnable> waiting = new ArrayDeque<>();
+        private int active;
+
+        HostLimiter(int maxConnections) {
+            this.maxConnections = Math.max(1, maxConnections);
+        }
+
+        synchronized boolean tryAcquire(Runnable whenAvailable) {
+            if (active < maxConnections) {
+                active++;
+                return true;
+            }
+            waiting.addLast(whenAvailable);
+            return false;
+        }
+
+        /**
+         * Блокирующий вариант tryAcquire. Если ожидание прервано, а слот уже передан,
+         * он сразу возвращается.
+         */
+        void acquire() throws InterruptedException {
+            CompletableFuture<Void> granted = new CompletableFuture<>();
+            Runnable grant = () -> {
+                if (!granted.complete(null)) {
+                    release();
+                }
+            };
+            if (tryAcquire(grant)) {
+                return;
+            }
+            try {
+                granted.get();
+            } catch (InterruptedException e) {
+                if (!granted.complete(null)) {
+                    release();
+                }
+                throw e;
+            } catch (ExecutionException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        void release() {
+            Runnable next;
+            synchronized (this) {
+                next = waiting.pollFirst();
+                if (next == null) {
+                    active--;
+                }
+            }
+            if (next != null) {
+                next.run();
+            }
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package searchengine.services.utilities;
+
+import lombok.Getter;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+
+import java.util.List;
+
+/**
+ * Всё, что нужно от страницы после загрузки: исходный HTML, заголовок, текст и ссылки.
+ * HTML разбирается один раз, дальше по конвейеру передаётся только этот объект.
+ */
+@Getter
+public class ParsedPage {
+    private final String body;
+    private final String title;
+    private final String text;
+    private final List<String> links;
+    private final String canonicalLink;
+
+    private ParsedPage(String body, Document document) {
+        this.body = body;
+        this.title = document.title();
+        this.text = document.text();
+        this.links = document.select("a[href]").stream()
+                .map(link -> link.attr("abs:href"))
+                .filter(link -> !link.isEmpty())
+                .toList();
+        Element canonical = document.selectFirst("link[rel=canonical][href]");
+        this.canonicalLink = canonical == null ? null : canonical.attr("abs:href");
+    }
+
+    public static ParsedPage parse(String body, String url) {
+        return new ParsedPage(body, Jsoup.parse(body, url));
+    }
+}
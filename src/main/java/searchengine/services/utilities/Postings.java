@@ -0,0 +1,65 @@
+package searchengine.services.utilities;
+
+import lombok.Getter;
+
+import java.util.Arrays;
+
+/**
+ * Список страниц леммы: id страниц по возрастанию и ранги в том же порядке.
+ */
+@Getter
+public class Postings {
+    public static final Postings EMPTY = new Postings(new int[0], new float[0]);
+
+    private final int[] pageIds;
+    private final float[] ranks;
+
+    public Postings(int[] pageIds, float[] ranks) {
+        this.pageIds = pageIds;
+        this.ranks = ranks;
+    }
+
+    public int size() {
+        return pageIds.length;
+    }
+
+    /**
+     * @return страницы, которые есть в обоих списках, с суммой рангов
+     */
+    public Postings intersect(Postings other) {
+        int[] resultIds = new int[Math.min(size(), other.size())];
+        float[] resultRanks = new float[resultIds.length];
+        int count = 0;
+        int i = 0;
+        int j = 0;
+        while (i < size() && j < other.size()) {
+            if (pageIds[i] < other.pageIds[j]) {
+                i++;
+            } else if (pageIds[i] > other.pageIds[j]) {
+                j++;
+            } else {
+                resultIds[count] = pageIds[i];
+                resultRanks[count++] = ranks[i++] + other.ranks[j++];
+            }
+        }
+        return new Postings(Arrays.copyOf(resultIds, count), Arrays.copyOf(resultRanks, count));
+    }
+
+    /**
+     * Собирает список из неупорядоченных пар (страница, ранг).
+     */
+    public static Postings sorted(int[] pageIds, float[] ranks, int size) {
+        long[] packed = new long[size];
+        for (int i = 0; i < size; i++) {
+            packed[i] = ((long) pageIds[i] << 32) | (Float.floatToRawIntBits(ranks[i]) & 0xffffffffL);
+        }
+        Arrays.sort(packed);
+        int[] sortedIds = new int[size];
+        float[] sortedRanks = new float[size];
+        for (int i = 0; i < size; i++) {
+            sortedIds[i] = (int) (packed[i] >>> 32);
+            sortedRanks[i] = Float.intBitsToFloat((int) packed[i]);
+        }
+        return new Postings(sortedIds, sortedRanks);
+    }
+}
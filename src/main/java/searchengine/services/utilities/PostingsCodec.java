@@ -0,0 +1,48 @@
+package searchengine.services.utilities;
+
+import java.io.ByteArrayOutputStream;
+
+/**
+ * Сжатый список страниц леммы для колонки lemma.postings.
+ * Формат: число страниц, разности соседних id страниц, затем ранги, округлённые до целых
+ * (ранг — число вхождений леммы на странице). Все числа записаны как {@link Varint}.
+ * Частая лемма на сайте из 100 тысяч страниц занимает два-три байта на страницу вместо строки index_table.
+ */
+public final class PostingsCodec {
+
+    private PostingsCodec() {
+    }
+
+    public static byte[] encode(Postings postings) {
+        ByteArrayOutputStream output = new ByteArrayOutputStream(postings.size() * 2 + 5);
+        Varint.write(output, postings.size());
+        int previous = 0;
+        for (int pageId : postings.getPageIds()) {
+            if (pageId < previous) {
+                throw new IllegalArgumentException("Страницы списка не упорядочены по id");
+            }
+            Varint.write(output, pageId - previous);
+            previous = pageId;
+        }
+        for (float rank : postings.getRanks()) {
+            Varint.write(output, Math.max(0, Math.round(rank)));
+        }
+        return output.toByteArray();
+    }
+
+    public static Postings decode(byte[] data) {
+        Varint.Reader reader = new Varint.Reader(data);
+        int size = reader.next();
+        int[] pageIds = new int[size];
+        float[] ranks = new float[size];
+        int pageId = 0;
+        for (int i = 0; i < size; i++) {
+            pageId += reader.next();
+            pageIds[i] = pageId;
+        }
+        for (int i = 0; i < size; i++) {
+            ranks[i] = reader.next();
+        }
+        return new Postings(pageIds, ranks);
+    }
+}
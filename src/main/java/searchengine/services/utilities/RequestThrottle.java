@@ -0,0 +1,20 @@
+package searchengine.services.utilities;
+
+/**
+ * Очередь к хосту для служебных загрузок: robots.txt и sitemap ждут так же, как страницы.
+ */
+public interface RequestThrottle {
+    RequestThrottle NONE = new RequestThrottle() {
+        @Override
+        public void acquire(String url) {
+        }
+
+        @Override
+        public void release(String url, int statusCode, String retryAfter) {
+        }
+    };
+
+    void acquire(String url) throws InterruptedException;
+
+    void release(String url, int statusCode, String retryAfter);
+}
@@ -0,0 +1,165 @@
+package searchengine.services.utilities;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+@Slf4j
+public class RobotsTxt {
+    private static final RobotsTxt EMPTY = new RobotsTxt();
+
+    @Getter
+    private Double crawlDelay;
+    private final List<Rule> rules = new ArrayList<>();
+    @Getter
+    private final List<String> sitemaps = new ArrayList<>();
+
+    private RobotsTxt() {
+    }
+
+    public static RobotsTxt empty() {
+        return EMPTY;
+    }
+
+    public static RobotsTxt load(String siteUrl, PageFetcher pageFetcher, RequestThrottle throttle) {
+        String robotsUrl = siteUrl.endsWith("/") ? siteUrl + "robots.txt" : siteUrl + "/robots.txt";
+        try {
+            throttle.acquire(robotsUrl);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return EMPTY;
+        }
+        int statusCode = 0;
+        String retryAfter = null;
+        try {
+            FetchResult response = pageFetcher.fetch(robotsUrl);
+            statusCode = response.getStatusCode();
+            retryAfter = response.getRetryAfter();
+            if (response.getStatusCode() >= 400) {
+                return EMPTY;
+            }
+            return parse(response.getBody(), pageFetcher.getUserAgent());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return EMPTY;
+        } catch (Exception e) {
+            log.warn("robots.txt is not available for {}: {}", siteUrl, e.getMessage());
+            return EMPTY;
+        } finally {
+            throttle.release(robotsUrl, statusCode, retryAfter);
+        }
+    }
+
+    public static RobotsTxt parse(String content, String userAgent) {
+        RobotsTxt specific = new RobotsTxt();
+        RobotsTxt wildcard = new RobotsTxt();
+        boolean specificFound = false;
+        String agentToken = userAgent == null ? "" : userAgent.toLowerCase(Locale.ROOT);
+        RobotsTxt current = null;
+        boolean readingAgents = false;
+        List<String> sitemaps = new ArrayList<>();
+
+        for (String rawLine : content.split("\\r?\\n")) {
+            String line = stripComment(rawLine);
+            int colon = line.indexOf(':');
+            if (colon < 0) {
+                continue;
+            }
+            String field = line.substring(0, colon).trim().toLowerCase(Locale.ROOT);
+            String value = line.substring(colon + 1).trim();
+            if (field.equals("user-agent")) {
+                if (!readingAgents) {
+                    current = null;
+                }
+                readingAgents = true;
+                String agent = value.toLowerCase(Locale.ROOT);
+                if (agent.equals("*")) {
+                    current = current == null ? wildcard : current;
+                } else if (!agentToken.isEmpty() && agentToken.contains(agent)) {
+                    current = specific;
+                    specificFound = true;
+                }
+                continue;
+            }
+            readingAgents = false;
+            if (field.equals("sitemap")) {
+                sitemaps.add(value);
+                continue;
+            }
+            if (current != null) {
+                current.applyRule(field, value);
+            }
+        }
+        RobotsTxt result = specificFound ? specific : wildcard;
+        result.sitemaps.addAll(sitemaps);
+        return result;
+    }
+
+    /**
+     * Побеждает самое длинное совпавшее правило, при равной длине - Allow.
+     */
+    public boolean isAllowed(String url) {
+        if (rules.isEmpty()) {
+            return true;
+        }
+        String path;
+        try {
+            URI uri = URI.create(url);
+            path = (uri.getRawPath() == null || uri.getRawPath().isEmpty() ? "/" : uri.getRawPath())
+                    + (uri.getRawQuery() == null ? "" : "?" + uri.getRawQuery());
+        } catch (IllegalArgumentException e) {
+            return true;
+        }
+        Rule matched = null;
+        for (Rule rule : rules) {
+            if (rule.pattern.matcher(path).lookingAt() && (matched == null || rule.length > matched.length
+                    || (rule.length == matched.length && rule.allow))) {
+                matched = rule;
+            }
+        }
+        return matched == null || matched.allow;
+    }
+
+    private void applyRule(String field, String value) {
+        if ((field.equals("allow") || field.equals("disallow")) && !value.isEmpty()) {
+            rules.add(new Rule(value, field.equals("allow")));
+        } else if (field.equals("crawl-delay")) {
+            try {
+                crawlDelay = Double.parseDouble(value);
+            } catch (NumberFormatException e) {
+                log.debug("Invalid Crawl-delay value: {}", value);
+            }
+        }
+    }
+
+    private static String stripComment(String line) {
+        int hash = line.indexOf('#');
+        return hash < 0 ? line : line.substring(0, hash);
+    }
+
+    private static class Rule {
+        private final Pattern pattern;
+        private final int length;
+        private final boolean allow;
+
+        Rule(String value, boolean allow) {
+            boolean anchored = value.endsWith("$");
+            String body = anchored ? value.substring(0, value.length() - 1) : value;
+            StringBuilder regex = new StringBuilder();
+            for (String part : body.split("\\*", -1)) {
+                if (regex.length() > 0) {
+                    regex.append(".*");
+                }
+                regex.append(Pattern.quote(part));
+            }
+            this.pattern = Pattern.compile(anchored ? regex + "$" : regex.toString());
+            this.length = value.length();
+            this.allow = allow;
+        }
+    }
+}
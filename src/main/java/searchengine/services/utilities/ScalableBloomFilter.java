@@ -0,0 +1,135 @@
+package searchengine.services.utilities;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Масштабируемый фильтр Блума: когда очередной слой заполнен, добавляется слой вдвое больше
+ * с вдвое меньшей вероятностью ложного срабатывания, поэтому суммарная вероятность
+ * не превышает заданного предела при любом числе адресов.
+ * Оценка вероятности проверяется по мере заполнения: слой, превысивший свою долю, закрывается раньше,
+ * а если превышен общий предел, слои замораживаются и новые адреса учитываются точно в FingerprintSet,
+ * так что вероятность ложного срабатывания дальше не растёт.
+ */
+@Slf4j
+public class ScalableBloomFilter implements VisitedUrls {
+    private static final int GROWTH_FACTOR = 2;
+    private static final double TIGHTENING_RATIO = 0.5;
+    private static final int CHECK_INTERVAL = 1024;
+
+    private final double maxFalsePositiveRate;
+    private final List<Layer> layers = new ArrayList<>();
+    private FingerprintSet exact;
+    private long size;
+
+    public ScalableBloomFilter(int initialCapacity, double maxFalsePositiveRate) {
+        this.maxFalsePositiveRate = maxFalsePositiveRate;
+        layers.add(new Layer(Math.max(1024, initialCapacity), maxFalsePositiveRate * (1 - TIGHTENING_RATIO)));
+    }
+
+    @Override
+    public synchronized boolean add(long fingerprint) {
+        for (Layer layer : layers) {
+            if (layer.mightContain(fingerprint)) {
+                return false;
+            }
+        }
+        if (exact != null) {
+            if (!exact.add(fingerprint)) {
+                return false;
+            }
+            size++;
+            return true;
+        }
+        Layer current = layers.get(layers.size() - 1);
+        if (current.isFull()) {
+            current = new Layer(current.capacity * GROWTH_FACTOR, current.errorRate * TIGHTENING_RATIO);
+            layers.add(current);
+        }
+        current.put(fingerprint);
+        size++;
+        if (size % CHECK_INTERVAL == 0) {
+            checkFalsePositiveRate(current);
+        }
+        return true;
+    }
+
+    private void checkFalsePositiveRate(Layer current) {
+        double rate = falsePositiveRate();
+        if (rate > maxFalsePositiveRate) {
+            log.warn("Bloom filter false positive rate {} exceeds {} after {} URLs, switching to exact tracking",
+                    rate, maxFalsePositiveRate, size);
+            exact = new FingerprintSet(current.capacity > Integer.MAX_VALUE ? Integer.MAX_VALUE : (int) current.capacity);
+        } else if (current.currentFalsePositiveRate() > current.errorRate) {
+            layers.add(new Layer(current.capacity * GROWTH_FACTOR, current.errorRate * TIGHTENING_RATIO));
+        }
+    }
+
+    @Override
+    public synchronized long size() {
+        return size;
+    }
+
+    @Override
+    public synchronized double falsePositiveRate() {
+        double notFalsePositive = 1.0;
+        for (Layer layer : layers) {
+            notFalsePositive *= 1.0 - layer.currentFalsePositiveRate();
+        }
+        return 1.0 - notFalsePositive;
+    }
+
+    public double getMaxFalsePositiveRate() {
+        return maxFalsePositiveRate;
+    }
+
+    private static class Layer {
+        private final long capacity;
+        private final double errorRate;
+        private final long[] bits;
+        private final long bitCount;
+        private final int hashCount;
+        private long count;
+
+        Layer(long capacity, double errorRate) {
+            this.capacity = capacity;
+            this.errorRate = errorRate;
+            long optimalBits = (long) Math.ceil(-capacity * Math.log(errorRate) / (Math.log(2) * Math.log(2)));
+            this.bits = new long[(int) ((optimalBits + 63) / 64)];
+            this.bitCount = bits.length * 64L;
+            this.hashCount = Math.max(1, (int) Math.round((double) bitCount / capacity * Math.log(2)));
+        }
+
+        boolean isFull() {
+            return count >= capacity;
+        }
+
+        boolean mightContain(long fingerprint) {
+            long hash1 = fingerprint;
+            long hash2 = UrlFingerprint.mix(fingerprint) | 1;
+            for (int i = 0; i < hashCount; i++) {
+                long bit = Math.floorMod(hash1 + i * hash2, bitCount);
+                if ((bits[(int) (bit >>> 6)] & (1L << bit)) == 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        void put(long fingerprint) {
+            long hash1 = fingerprint;
+            long hash2 = UrlFingerprint.mix(fingerprint) | 1;
+            for (int i = 0; i < hashCount; i++) {
+                long bit = Math.floorMod(hash1 + i * hash2, bitCount);
+                bits[(int) (bit >>> 6)] |= 1L << bit;
+            }
+            count++;
+        }
+
+        double currentFalsePositiveRate() {
+            return Math.pow(1 - Math.exp(-(double) hashCount * count / bitCount), hashCount);
+        }
+    }
+}
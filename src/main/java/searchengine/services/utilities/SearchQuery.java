@@ -0,0 +1,147 @@
+package searchengine.services.utilities;
+
+import lombok.Getter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Операторы поискового запроса, которые проверяются по позициям лемм на странице:
+ * фраза в кавычках ("кот в сапогах") — слова идут подряд и в том же порядке, служебные слова
+ * учитываются в расстоянии; слово NEAR/k слово — слова стоят не дальше k слов друг от друга.
+ * Леммы для отбора страниц берутся из всего текста запроса, как и без операторов.
+ */
+@Getter
+public class SearchQuery {
+    public static final SearchQuery EMPTY = new SearchQuery(List.of());
+    private static final Pattern PHRASE = Pattern.compile("\"([^\"]+)\"");
+    private static final Pattern NEAR = Pattern.compile("([а-яА-Я]+)\\s+NEAR/(\\d+)\\s+([а-яА-Я]+)");
+
+    private final List<Constraint> constraints;
+
+    private SearchQuery(List<Constraint> constraints) {
+        this.constraints = constraints;
+    }
+
+    public static SearchQuery parse(String query, LemmaFinder lemmaFinder) {
+        List<Constraint> constraints = new ArrayList<>();
+        Matcher phrase = PHRASE.matcher(query);
+        while (phrase.find()) {
+            TermPositions positions = lemmaFinder.collectPositions(phrase.group(1));
+            if (positions.getLemmas().size() > 1) {
+                constraints.add(new Phrase(positions));
+            }
+        }
+        Matcher near = NEAR.matcher(query);
+        while (near.find()) {
+            String first = singleLemma(lemmaFinder, near.group(1));
+            String second = singleLemma(lemmaFinder, near.group(3));
+            if (first != null && second != null) {
+                constraints.add(new Near(first, second, Integer.parseInt(near.group(2))));
+            }
+        }
+        return new SearchQuery(constraints);
+    }
+
+    private static String singleLemma(LemmaFinder lemmaFinder, String word) {
+        return lemmaFinder.collectPositions(word).getLemmas().stream().findFirst().orElse(null);
+    }
+
+    /**
+     * @return позиция первого совпадения всех операторов запроса на странице, -1, если какой-то оператор
+     * не выполняется, или 0, если операторов в запросе нет
+     */
+    public int firstMatch(TermPositions positions) {
+        int first = Integer.MAX_VALUE;
+        for (Constraint constraint : constraints) {
+            int match = constraint.firstMatch(positions);
+            if (match < 0) {
+                return -1;
+            }
+            first = Math.min(first, match);
+        }
+        return constraints.isEmpty() ? 0 : first;
+    }
+
+    public boolean hasConstraints() {
+        return !constraints.isEmpty();
+    }
+
+    public interface Constraint {
+        /**
+         * @return позиция слова, с которого начинается первое совпадение, или -1
+         */
+        int firstMatch(TermPositions positions);
+    }
+
+    private static class Phrase implements Constraint {
+        private final String[] lemmas;
+        private final int[] offsets;
+
+        Phrase(TermPositions phrasePositions) {
+            Map<Integer, String> byPosition = new TreeMap<>();
+            for (String lemma : phrasePositions.getLemmas()) {
+                for (int position : phrasePositions.get(lemma)) {
+                    byPosition.put(position, lemma);
+                }
+            }
+            this.lemmas = byPosition.values().toArray(new String[0]);
+            this.offsets = new int[lemmas.length];
+            int i = 0;
+            int start = byPosition.keySet().iterator().next();
+            for (int position : byPosition.keySet()) {
+                offsets[i++] = position - start;
+            }
+        }
+
+        @Override
+        public int firstMatch(TermPositions positions) {
+            for (int start : positions.get(lemmas[0])) {
+                boolean matches = true;
+                for (int i = 1; i < lemmas.length && matches; i++) {
+                    matches = Arrays.binarySearch(positions.get(lemmas[i]), start + offsets[i]) >= 0;
+                }
+                if (matches) {
+                    return start;
+                }
+            }
+            return -1;
+        }
+    }
+
+    private static class Near implements Constraint {
+        private final String first;
+        private final String second;
+        private final int distance;
+
+        Near(String first, String second, int distance) {
+            this.first = first;
+            this.second = second;
+            this.distance = distance;
+        }
+
+        @Override
+        public int firstMatch(TermPositions positions) {
+            int[] firstPositions = positions.get(first);
+            int[] secondPositions = positions.get(second);
+            int i = 0;
+            int j = 0;
+            while (i < firstPositions.length && j < secondPositions.length) {
+                if (Math.abs(firstPositions[i] - secondPositions[j]) <= distance) {
+                    return Math.min(firstPositions[i], secondPositions[j]);
+                }
+                if (firstPositions[i] < secondPositions[j]) {
+                    i++;
+                } else {
+                    j++;
+                }
+            }
+            return -1;
+        }
+    }
+}
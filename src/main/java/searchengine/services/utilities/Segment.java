@@ -0,0 +1,193 @@
+package searchengine.services.utilities;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import sun.misc.Unsafe;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+
+/**
+ * Неизменяемый сегмент индекса, читаемый через отображение файла в память.
+ * Формат: заголовок (magic, версия, число лемм, число заменённых страниц, длина области строк),
+ * отсортированные id страниц, которые сегмент заменяет в более старых сегментах сайта,
+ * таблица лемм по 20 байт (смещение и длина строки, смещение списка страниц, число страниц),
+ * строки лемм в UTF-8 в порядке байтов и списки страниц парами (id страницы, ранг).
+ * <p>
+ * Сегмент считает ссылки: одну держит индекс, по одной — каждый поиск, который его читает.
+ * Выведенный из индекса сегмент отображение и файл освобождают после последнего чтения.
+ */
+@Slf4j
+public class Segment {
+    static final int MAGIC = 0x53454731;
+    static final int VERSION = 1;
+    static final int POSTING_SIZE = 8;
+    private static final int HEADER_SIZE = 20;
+    private static final int TERM_ENTRY_SIZE = 20;
+
+    @Getter
+    private final Path path;
+    private final MappedByteBuffer buffer;
+    @Getter
+    private final int termCount;
+    @Getter
+    private final int[] replacedPages;
+    private final int termsOffset;
+    private final int stringsOffset;
+    private final int postingsOffset;
+    private final AtomicInteger references = new AtomicInteger(1);
+    private volatile boolean retired;
+
+    private Segment(Path path, MappedByteBuffer buffer) throws IOException {
+        this.path = path;
+        this.buffer = buffer;
+        if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            throw new IOException("Файл " + path + " не является сегментом индекса");
+        }
+        this.termCount = buffer.getInt(8);
+        int replacedCount = buffer.getInt(12);
+        int stringsLength = buffer.getInt(16);
+        this.replacedPages = new int[replacedCount];
+        for (int i = 0; i < replacedCount; i++) {
+            replacedPages[i] = buffer.getInt(HEADER_SIZE + i * 4);
+        }
+        this.termsOffset = HEADER_SIZE + replacedCount * 4;
+        this.stringsOffset = termsOffset + termCount * TERM_ENTRY_SIZE;
+        this.postingsOffset = stringsOffset + stringsLength;
+    }
+
+    public static Segment open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Сегмент " + path + " больше 2 ГБ");
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            buffer.order(ByteOrder.BIG_ENDIAN);
+            return new Segment(path, buffer);
+        }
+    }
+
+    /**
+     * @return false, если сегмент уже освобождён и читать его нельзя
+     */
+    public boolean retain() {
+        int count;
+        do {
+            count = references.get();
+            if (count == 0) {
+                return false;
+            }
+        } while (!references.compareAndSet(count, count + 1));
+        return true;
+    }
+
+    public void release() {
+        if (references.decrementAndGet() == 0) {
+            unmap(buffer);
+            if (retired) {
+                try {
+                    Files.deleteIfExists(path);
+                } catch (IOException e) {
+                    log.warn("Segment {} could not be deleted: {}", path, e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Отпускает ссылку индекса; файл удаляется, когда сегмент дочитают все поиски.
+     */
+    public void retire() {
+        retired = true;
+        release();
+    }
+
+    /**
+     * @return страницы леммы или null, если лемма в сегменте не встречается
+     */
+    public Postings postings(String lemma) {
+        byte[] key = lemma.getBytes(StandardCharsets.UTF_8);
+        int low = 0;
+        int high = termCount - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int comparison = compare(termBytes(middle), key);
+            if (comparison < 0) {
+                low = middle + 1;
+            } else if (comparison > 0) {
+                high = middle - 1;
+            } else {
+                return readPostings(middle);
+            }
+        }
+        return null;
+    }
+
+    public boolean replaces(int pageId) {
+        return Arrays.binarySearch(replacedPages, pageId) >= 0;
+    }
+
+    public List<String> getTerms() {
+        List<String> terms = new ArrayList<>(termCount);
+        for (int i = 0; i < termCount; i++) {
+            terms.add(new String(termBytes(i), StandardCharsets.UTF_8));
+        }
+        return terms;
+    }
+
+    public void forEachTerm(BiConsumer<String, Postings> consumer) {
+        for (int i = 0; i < termCount; i++) {
+            consumer.accept(new String(termBytes(i), StandardCharsets.UTF_8), readPostings(i));
+        }
+    }
+
+    private byte[] termBytes(int index) {
+        int entry = termsOffset + index * TERM_ENTRY_SIZE;
+        byte[] bytes = new byte[buffer.getInt(entry + 4)];
+        buffer.get(stringsOffset + buffer.getInt(entry), bytes);
+        return bytes;
+    }
+
+    private Postings readPostings(int index) {
+        int entry = termsOffset + index * TERM_ENTRY_SIZE;
+        int start = postingsOffset + (int) buffer.getLong(entry + 8);
+        int count = buffer.getInt(entry + 16);
+        int[] pageIds = new int[count];
+        float[] ranks = new float[count];
+        for (int i = 0; i < count; i++) {
+            pageIds[i] = buffer.getInt(start + i * POSTING_SIZE);
+            ranks[i] = buffer.getFloat(start + i * POSTING_SIZE + 4);
+        }
+        return new Postings(pageIds, ranks);
+    }
+
+    static int compare(byte[] first, byte[] second) {
+        return Arrays.compareUnsigned(first, second);
+    }
+
+    /**
+     * Освобождает отображение сразу, не дожидаясь сборки мусора. Без этого файл на диске
+     * занят, пока буфер не соберут.
+     */
+    private static void unmap(MappedByteBuffer buffer) {
+        try {
+            Field field = Unsafe.class.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            ((Unsafe) field.get(null)).invokeCleaner(buffer);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            log.debug("Segment buffer is left to the garbage collector: {}", e.getMessage());
+        }
+    }
+}
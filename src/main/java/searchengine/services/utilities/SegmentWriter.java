@@ -0,0 +1,118 @@
+package searchengine.services.utilities;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Пишет сегмент индекса (формат описан в {@link Segment}). Леммы передаются сгруппированными,
+ * страницы внутри леммы — по возрастанию id. Файл появляется под своим именем только в finish.
+ */
+public class SegmentWriter {
+    private final Path target;
+    private final Path postingsFile;
+    private final int[] replacedPages;
+    private final DataOutputStream postings;
+    private final List<Term> terms = new ArrayList<>();
+    private final Set<String> lemmas = new HashSet<>();
+    private Term current;
+    private int lastPageId;
+    private long postingsCount;
+
+    public SegmentWriter(Path target, int[] replacedPages) throws IOException {
+        this.target = target;
+        this.postingsFile = target.resolveSibling(target.getFileName() + ".postings");
+        this.replacedPages = replacedPages.clone();
+        Arrays.sort(this.replacedPages);
+        this.postings = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(postingsFile)));
+    }
+
+    public void add(String lemma, int pageId, float rank) throws IOException {
+        if (current == null || !current.lemma.equals(lemma)) {
+            if (!lemmas.add(lemma)) {
+                throw new IllegalStateException("Страницы леммы " + lemma + " переданы не подряд");
+            }
+            current = new Term(lemma, postingsCount * Segment.POSTING_SIZE);
+            terms.add(current);
+        } else if (pageId <= lastPageId) {
+            throw new IllegalStateException("Страницы леммы " + lemma + " не упорядочены по id");
+        }
+        postings.writeInt(pageId);
+        postings.writeFloat(rank);
+        lastPageId = pageId;
+        current.docCount++;
+        postingsCount++;
+    }
+
+    public void add(String lemma, Postings postings) throws IOException {
+        for (int i = 0; i < postings.size(); i++) {
+            add(lemma, postings.getPageIds()[i], postings.getRanks()[i]);
+        }
+    }
+
+    /**
+     * Удаляет временные файлы, сегмент не создаётся.
+     */
+    public void abort() throws IOException {
+        postings.close();
+        Files.deleteIfExists(postingsFile);
+    }
+
+    public void finish() throws IOException {
+        postings.close();
+        Path temporary = target.resolveSibling(target.getFileName() + ".tmp");
+        try {
+            terms.sort((first, second) -> Segment.compare(first.bytes, second.bytes));
+            int stringsLength = 0;
+            for (Term term : terms) {
+                stringsLength += term.bytes.length;
+            }
+            try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+                output.writeInt(Segment.MAGIC);
+                output.writeInt(Segment.VERSION);
+                output.writeInt(terms.size());
+                output.writeInt(replacedPages.length);
+                output.writeInt(stringsLength);
+                for (int pageId : replacedPages) {
+                    output.writeInt(pageId);
+                }
+                int stringOffset = 0;
+                for (Term term : terms) {
+                    output.writeInt(stringOffset);
+                    output.writeInt(term.bytes.length);
+                    output.writeLong(term.postingsOffset);
+                    output.writeInt(term.docCount);
+                    stringOffset += term.bytes.length;
+                }
+                for (Term term : terms) {
+                    output.write(term.bytes);
+                }
+                Files.copy(postingsFile, output);
+            }
+            Files.move(temporary, target, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporary);
+            Files.deleteIfExists(postingsFile);
+        }
+    }
+
+    private static class Term {
+        private final String lemma;
+        private final byte[] bytes;
+        private final long postingsOffset;
+        private int docCount;
+
+        Term(String lemma, long postingsOffset) {
+            this.lemma = lemma;
+            this.bytes = lemma.getBytes(StandardCharsets.UTF_8);
+            this.postingsOffset = postingsOffset;
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package searchengine.services.utilities;
+
+import java.util.Map;
+
+public final class SimHash {
+
+    private SimHash() {
+    }
+
+    public static long compute(Map<String, Integer> lemmas) {
+        long[] weights = new long[64];
+        for (Map.Entry<String, Integer> entry : lemmas.entrySet()) {
+            long hash = UrlFingerprint.of(entry.getKey());
+            int weight = entry.getValue();
+            for (int bit = 0; bit < 64; bit++) {
+                weights[bit] += ((hash >>> bit) & 1) == 1 ? weight : -weight;
+            }
+        }
+        long simHash = 0;
+        for (int bit = 0; bit < 64; bit++) {
+            if (weights[bit] > 0) {
+                simHash |= 1L << bit;
+            }
+        }
+        return simHash;
+    }
+
+    public static int distance(long first, long second) {
+        return Long.bitCount(first ^ second);
+    }
+}
@@ -0,0 +1,86 @@
+package searchengine.services.utilities;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Поиск страниц с близким SimHash. Отпечаток делится на maxDistance + 1 полос: у двух отпечатков
+ * с расстоянием не больше maxDistance хотя бы одна полоса совпадает, поэтому сравнивать
+ * нужно только страницы из тех же корзин.
+ */
+public class SimHashIndex {
+    private final int maxDistance;
+    private final int bandCount;
+    private final int bandWidth;
+    private final Map<Long, List<long[]>> buckets = new HashMap<>();
+    private final Map<Integer, Long> fingerprints = new HashMap<>();
+
+    public SimHashIndex(int maxDistance) {
+        this.maxDistance = maxDistance;
+        this.bandCount = Math.min(64, maxDistance + 1);
+        this.bandWidth = 64 / bandCount;
+    }
+
+    public synchronized Integer findDuplicate(long simHash, Integer excludedPageId) {
+        for (int band = 0; band < bandCount; band++) {
+            List<long[]> bucket = buckets.get(bucketKey(band, simHash));
+            if (bucket == null) {
+                continue;
+            }
+            for (long[] entry : bucket) {
+                int pageId = (int) entry[1];
+                if (SimHash.distance(simHash, entry[0]) <= maxDistance
+                        && (excludedPageId == null || pageId != excludedPageId)) {
+                    return pageId;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Поиск и добавление под одной блокировкой: из двух одновременно обработанных близких страниц
+     * дубликатом будет признана одна.
+     *
+     * Прежний отпечаток страницы при этом удаляется.
+     *
+     * @return id близкой страницы или null, если её нет и отпечаток добавлен
+     */
+    public synchronized Integer findOrAdd(long simHash, int pageId) {
+        remove(pageId);
+        Integer duplicateOf = findDuplicate(simHash, pageId);
+        if (duplicateOf == null) {
+            add(simHash, pageId);
+        }
+        return duplicateOf;
+    }
+
+    public synchronized void add(long simHash, int pageId) {
+        remove(pageId);
+        fingerprints.put(pageId, simHash);
+        for (int band = 0; band < bandCount; band++) {
+            buckets.computeIfAbsent(bucketKey(band, simHash), key -> new ArrayList<>()).add(new long[]{simHash, pageId});
+        }
+    }
+
+    public synchronized void remove(int pageId) {
+        Long simHash = fingerprints.remove(pageId);
+        if (simHash == null) {
+            return;
+        }
+        for (int band = 0; band < bandCount; band++) {
+            List<long[]> bucket = buckets.get(bucketKey(band, simHash));
+            if (bucket != null) {
+                bucket.removeIf(entry -> entry[1] == pageId);
+            }
+        }
+    }
+
+    private long bucketKey(int band, long simHash) {
+        int width = band == bandCount - 1 ? 64 - band * bandWidth : bandWidth;
+        long mask = width == 64 ? -1L : (1L << width) - 1;
+        return ((long) band << 58) ^ ((simHash >>> (band * bandWidth)) & mask);
+    }
+}
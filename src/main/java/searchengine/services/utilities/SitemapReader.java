@@ -0,0 +1,143 @@
+package searchengine.services.utilities;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
+import java.util.*;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Потоково читает sitemap.xml, индексы sitemap и сжатые gzip карты сайта.
+ * Адреса возвращаются от самых свежих по lastmod к самым старым; если адресов больше maxUrls,
+ * остаются самые свежие.
+ */
+@Slf4j
+public class SitemapReader {
+    private static final int MAX_SITEMAPS = 100;
+
+    private final PageFetcher pageFetcher;
+    private final RequestThrottle throttle;
+    private final int maxUrls;
+    private final XMLInputFactory xmlInputFactory;
+
+    public SitemapReader(PageFetcher pageFetcher, RequestThrottle throttle, int maxUrls) {
+        this.pageFetcher = pageFetcher;
+        this.throttle = throttle;
+        this.maxUrls = maxUrls;
+        this.xmlInputFactory = XMLInputFactory.newFactory();
+        xmlInputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        xmlInputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+    }
+
+    public List<String> read(Collection<String> sitemapUrls) {
+        Deque<String> pending = new ArrayDeque<>(sitemapUrls);
+        Set<String> seenSitemaps = new HashSet<>();
+        PriorityQueue<Entry> entries = new PriorityQueue<>(Comparator.comparingLong(Entry::getLastModified));
+        while (!pending.isEmpty() && seenSitemaps.size() < MAX_SITEMAPS) {
+            String sitemapUrl = pending.poll();
+            if (!seenSitemaps.add(sitemapUrl)) {
+                continue;
+            }
+            try {
+                throttle.acquire(sitemapUrl);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+            try (InputStream stream = open(sitemapUrl)) {
+                parse(stream, pending, entries);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (IOException | XMLStreamException e) {
+                log.warn("Sitemap {} could not be read: {}", sitemapUrl, e.getMessage());
+            } finally {
+                throttle.release(sitemapUrl, 0, null);
+            }
+        }
+        List<Entry> newest = new ArrayList<>(entries);
+        newest.sort(Comparator.comparingLong(Entry::getLastModified).reversed());
+        log.info("{} urls were read from {} sitemaps", newest.size(), seenSitemaps.size());
+        return newest.stream().map(Entry::getUrl).toList();
+    }
+
+    private InputStream open(String sitemapUrl) throws IOException, InterruptedException {
+        BufferedInputStream stream = new BufferedInputStream(pageFetcher.openStream(sitemapUrl));
+        stream.mark(2);
+        int first = stream.read();
+        int second = stream.read();
+        stream.reset();
+        return first == 0x1f && second == 0x8b ? new GZIPInputStream(stream) : stream;
+    }
+
+    /**
+     * В entries остаются maxUrls самых свежих адресов: самый старый вытесняется первым.
+     */
+    private void parse(InputStream stream, Deque<String> pending, PriorityQueue<Entry> entries) throws XMLStreamException {
+        XMLStreamReader reader = xmlInputFactory.createXMLStreamReader(stream);
+        try {
+            String loc = null;
+            String lastmod = null;
+            StringBuilder text = new StringBuilder();
+            while (reader.hasNext()) {
+                int event = reader.next();
+                if (event == XMLStreamReader.START_ELEMENT) {
+                    text.setLength(0);
+                } else if (event == XMLStreamReader.CHARACTERS || event == XMLStreamReader.CDATA) {
+                    text.append(reader.getText());
+                } else if (event == XMLStreamReader.END_ELEMENT) {
+                    String name = reader.getLocalName();
+                    if (name.equals("loc")) {
+                        loc = text.toString().trim();
+                    } else if (name.equals("lastmod")) {
+                        lastmod = text.toString().trim();
+                    } else if (name.equals("sitemap") || name.equals("url")) {
+                        if (loc != null && name.equals("sitemap")) {
+                            pending.add(loc);
+                        } else if (loc != null) {
+                            entries.add(new Entry(loc, parseLastModified(lastmod)));
+                            if (entries.size() > maxUrls) {
+                                entries.poll();
+                            }
+                        }
+                        loc = null;
+                        lastmod = null;
+                    }
+                }
+            }
+        } finally {
+            reader.close();
+        }
+    }
+
+    private static long parseLastModified(String lastmod) {
+        if (lastmod == null || lastmod.isEmpty()) {
+            return Long.MIN_VALUE;
+        }
+        try {
+            return lastmod.length() == 10
+                    ? LocalDate.parse(lastmod).atStartOfDay().toEpochSecond(ZoneOffset.UTC)
+                    : OffsetDateTime.parse(lastmod).toEpochSecond();
+        } catch (DateTimeParseException e) {
+            return Long.MIN_VALUE;
+        }
+    }
+
+    @Getter
+    @RequiredArgsConstructor
+    private static class Entry {
+        private final String url;
+        private final long lastModified;
+    }
+}
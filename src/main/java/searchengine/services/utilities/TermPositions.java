@@ -0,0 +1,77 @@
+package searchengine.services.utilities;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Позиции лемм на странице: номера слов, на которых встречается каждая лемма, по возрастанию.
+ * Сжатый формат для колонки page.positions: число лемм, затем для каждой леммы длина и байты строки в UTF-8,
+ * число позиций и разности соседних позиций. Все числа записаны как {@link Varint}.
+ */
+public class TermPositions {
+    public static final TermPositions EMPTY = new TermPositions(Map.of());
+    private static final int[] NONE = new int[0];
+
+    private final Map<String, int[]> positions;
+
+    public TermPositions(Map<String, int[]> positions) {
+        this.positions = positions;
+    }
+
+    /**
+     * @return позиции леммы по возрастанию, пустой массив, если леммы на странице нет
+     */
+    public int[] get(String lemma) {
+        return positions.getOrDefault(lemma, NONE);
+    }
+
+    public Set<String> getLemmas() {
+        return positions.keySet();
+    }
+
+    /**
+     * @return число вхождений каждой леммы
+     */
+    public Map<String, Integer> getCounts() {
+        Map<String, Integer> counts = new HashMap<>();
+        positions.forEach((lemma, lemmaPositions) -> counts.put(lemma, lemmaPositions.length));
+        return counts;
+    }
+
+    public byte[] encode() {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        Varint.write(output, positions.size());
+        positions.forEach((lemma, lemmaPositions) -> {
+            byte[] bytes = lemma.getBytes(StandardCharsets.UTF_8);
+            Varint.write(output, bytes.length);
+            output.writeBytes(bytes);
+            Varint.write(output, lemmaPositions.length);
+            int previous = 0;
+            for (int position : lemmaPositions) {
+                Varint.write(output, position - previous);
+                previous = position;
+            }
+        });
+        return output.toByteArray();
+    }
+
+    public static TermPositions decode(byte[] data) {
+        Varint.Reader reader = new Varint.Reader(data);
+        int lemmaCount = reader.next();
+        Map<String, int[]> positions = new HashMap<>(lemmaCount * 2);
+        for (int i = 0; i < lemmaCount; i++) {
+            String lemma = new String(reader.nextBytes(reader.next()), StandardCharsets.UTF_8);
+            int[] lemmaPositions = new int[reader.next()];
+            int position = 0;
+            for (int j = 0; j < lemmaPositions.length; j++) {
+                position += reader.next();
+                lemmaPositions[j] = position;
+            }
+            positions.put(lemma, lemmaPositions);
+        }
+        return new TermPositions(positions);
+    }
+}
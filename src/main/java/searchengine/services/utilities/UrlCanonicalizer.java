@@ -0,0 +1,139 @@
+package searchengine.services.utilities;
+
+import org.springframework.stereotype.Component;
+import searchengine.config.CrawlerSettings;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.stream.Collectors;
+
+@Component
+public class UrlCanonicalizer {
+    private static final String ILLEGAL_CHARACTERS = "\"<>\\^`{|}";
+
+    private final List<String> strippedParameters;
+    private final List<String> indexFileNames;
+    private final boolean lowercasePaths;
+
+    public UrlCanonicalizer(CrawlerSettings crawlerSettings) {
+        this.strippedParameters = lowercase(crawlerSettings.getStrippedParameters());
+        this.indexFileNames = lowercase(crawlerSettings.getIndexFileNames());
+        this.lowercasePaths = crawlerSettings.isLowercasePaths();
+    }
+
+    public String canonicalize(String url) {
+        if (url == null || url.isBlank()) {
+            return null;
+        }
+        String trimmed = url.trim();
+        try {
+            return canonicalize(new URI(trimmed));
+        } catch (URISyntaxException e) {
+            try {
+                return canonicalize(new URI(escapeIllegalCharacters(stripFragment(trimmed))));
+            } catch (URISyntaxException unrecoverable) {
+                return null;
+            }
+        }
+    }
+
+    private String canonicalize(URI parsed) {
+        URI uri = parsed.normalize();
+        if (uri.getScheme() == null || uri.getHost() == null) {
+            return null;
+        }
+        String scheme = uri.getScheme().toLowerCase(Locale.ROOT);
+        if (!scheme.equals("http") && !scheme.equals("https")) {
+            return null;
+        }
+        StringBuilder result = new StringBuilder(scheme).append("://")
+                .append(uri.getHost().toLowerCase(Locale.ROOT));
+        int port = uri.getPort();
+        if (port != -1 && !(port == 80 && scheme.equals("http")) && !(port == 443 && scheme.equals("https"))) {
+            result.append(':').append(port);
+        }
+        result.append(normalizePath(uri.getRawPath()));
+        String query = normalizeQuery(uri.getRawQuery());
+        if (query != null) {
+            result.append('?').append(query);
+        }
+        return result.toString();
+    }
+
+    private static String stripFragment(String url) {
+        int hash = url.indexOf('#');
+        return hash < 0 ? url : url.substring(0, hash);
+    }
+
+    /**
+     * Кодирует символы, недопустимые в URI (пробелы, кириллицу в пути, |, фигурные скобки, одиночный %),
+     * чтобы такие ссылки проходили ту же нормализацию, что и остальные.
+     */
+    private static String escapeIllegalCharacters(String url) {
+        StringBuilder escaped = new StringBuilder(url.length());
+        byte[] bytes = url.getBytes(StandardCharsets.UTF_8);
+        for (int i = 0; i < bytes.length; i++) {
+            int c = bytes[i] & 0xff;
+            boolean escapedOctet = c == '%' && i + 2 < bytes.length
+                    && Character.digit(bytes[i + 1], 16) >= 0 && Character.digit(bytes[i + 2], 16) >= 0;
+            if (c > 0x20 && c < 0x7f && ILLEGAL_CHARACTERS.indexOf(c) < 0 && (c != '%' || escapedOctet)) {
+                escaped.append((char) c);
+            } else {
+                escaped.append('%').append(Character.toUpperCase(Character.forDigit(c >> 4, 16)))
+                        .append(Character.toUpperCase(Character.forDigit(c & 0xf, 16)));
+            }
+        }
+        return escaped.toString();
+    }
+
+    private String normalizePath(String rawPath) {
+        if (rawPath == null || rawPath.isEmpty()) {
+            return "/";
+        }
+        String path = Arrays.stream(rawPath.split(";"))
+                .reduce((first, parameter) -> isStripped(parameter.split("=", 2)[0]) ? first : first + ";" + parameter)
+                .orElse("/")
+                .replaceAll("/{2,}", "/");
+        int lastSlash = path.lastIndexOf('/');
+        if (indexFileNames.contains(path.substring(lastSlash + 1).toLowerCase(Locale.ROOT))) {
+            path = path.substring(0, lastSlash + 1);
+        }
+        if (path.length() > 1 && path.endsWith("/")) {
+            path = path.substring(0, path.length() - 1);
+        }
+        if (lowercasePaths) {
+            path = path.toLowerCase(Locale.ROOT);
+        }
+        return path.isEmpty() ? "/" : path;
+    }
+
+    private String normalizeQuery(String rawQuery) {
+        if (rawQuery == null || rawQuery.isEmpty()) {
+            return null;
+        }
+        String query = Arrays.stream(rawQuery.split("&"))
+                .filter(parameter -> !parameter.isEmpty())
+                .filter(parameter -> !isStripped(parameter.split("=", 2)[0]))
+                .sorted()
+                .collect(Collectors.joining("&"));
+        return query.isEmpty() ? null : query;
+    }
+
+    private boolean isStripped(String parameterName) {
+        String name = parameterName.toLowerCase(Locale.ROOT);
+        for (String pattern : strippedParameters) {
+            if (pattern.endsWith("*") ? name.startsWith(pattern.substring(0, pattern.length() - 1)) : name.equals(pattern)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static List<String> lowercase(List<String> values) {
+        return values.stream().map(value -> value.toLowerCase(Locale.ROOT)).toList();
+    }
+}
@@ -1,36 +1,47 @@
 package searchengine.services.utilities;
 
 import lombok.Getter;
-import org.jsoup.Connection;
-import org.jsoup.Jsoup;
-import org.jsoup.nodes.Document;
-import searchengine.config.ConnectionProfile;
 
 import java.io.IOException;
 
 public class UrlConnector {
-    private final ConnectionProfile connectionProfile;
+    private final PageFetcher pageFetcher;
     private final String url;
     @Getter
     private Integer statusCode;
     @Getter
-    private Document document;
+    private ParsedPage page;
+    @Getter
+    private String retryAfter;
+    @Getter
+    private String etag;
+    @Getter
+    private String lastModified;
 
-    public UrlConnector(String url, ConnectionProfile connectionProfile) throws IOException {
+    public UrlConnector(String url, PageFetcher pageFetcher) throws IOException, InterruptedException {
+        this(url, pageFetcher, null, null);
+    }
+
+    public UrlConnector(String url, PageFetcher pageFetcher,
+                        String ifNoneMatch, String ifModifiedSince) throws IOException, InterruptedException {
         this.url = url;
-        this.connectionProfile = connectionProfile;
-        connectToUrl();
+        this.pageFetcher = pageFetcher;
+        connectToUrl(ifNoneMatch, ifModifiedSince);
+    }
+
+    public boolean isNotModified() {
+        return statusCode == 304;
     }
 
-    private void connectToUrl() throws IOException {
-        Connection.Response response = Jsoup.connect(url)
-                .userAgent(connectionProfile.getUserAgent())
-                .referrer(connectionProfile.getReferrer())
-                .timeout(5000)
-                .ignoreHttpErrors(true)
-                .execute();
+    private void connectToUrl(String ifNoneMatch, String ifModifiedSince) throws IOException, InterruptedException {
+        FetchResult response = pageFetcher.fetch(url, ifNoneMatch, ifModifiedSince);
 
-        this.statusCode = response.statusCode();
-        this.document = response.parse();
+        this.statusCode = response.getStatusCode();
+        this.retryAfter = response.getRetryAfter();
+        this.etag = response.getEtag();
+        this.lastModified = response.getLastModified();
+        if (!isNotModified() && response.isHtml()) {
+            this.page = ParsedPage.parse(response.getBody(), url);
+        }
     }
 }
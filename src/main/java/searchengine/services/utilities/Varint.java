@@ -0,0 +1,54 @@
+package searchengine.services.utilities;
+
+import java.io.ByteArrayOutputStream;
+
+/**
+ * Целые неотрицательные числа переменной длины: по 7 бит в байте, старший бит означает продолжение.
+ */
+final class Varint {
+
+    private Varint() {
+    }
+
+    static void write(ByteArrayOutputStream output, int value) {
+        while ((value & ~0x7f) != 0) {
+            output.write((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        output.write(value);
+    }
+
+    static class Reader {
+        private final byte[] data;
+        private int position;
+
+        Reader(byte[] data) {
+            this.data = data;
+        }
+
+        int next() {
+            int value = 0;
+            for (int shift = 0; shift < 32; shift += 7) {
+                if (position >= data.length) {
+                    throw new IllegalArgumentException("Данные обрезаны");
+                }
+                byte current = data[position++];
+                value |= (current & 0x7f) << shift;
+                if (current >= 0) {
+                    return value;
+                }
+            }
+            throw new IllegalArgumentException("Данные повреждены");
+        }
+
+        byte[] nextBytes(int length) {
+            if (position + length > data.length) {
+                throw new IllegalArgumentException("Данные обрезаны");
+            }
+            byte[] bytes = new byte[length];
+            System.arraycopy(data, position, bytes, 0, length);
+            position += length;
+            return bytes;
+        }
+    }
+}
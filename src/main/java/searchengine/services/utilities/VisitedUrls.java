@@ -0,0 +1,13 @@
+package searchengine.services.utilities;
+
+public interface VisitedUrls {
+    boolean add(long fingerprint);
+
+    long size();
+
+    double falsePositiveRate();
+
+    default boolean add(String url) {
+        return add(UrlFingerprint.of(url));
+    }
+}
@@ -0,0 +1,131 @@
+package searchengine.services.utilities;
+
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Потоковое чтение WARC и WARC.gz: по одной записи за раз, возвращаются только ответы HTTP.
+ */
+public class WarcReader implements Closeable {
+    private final InputStream input;
+    private final int maxRecordBytes;
+
+    public WarcReader(InputStream stream, int maxRecordBytes) throws IOException {
+        BufferedInputStream buffered = new BufferedInputStream(stream, 1 << 16);
+        buffered.mark(2);
+        int first = buffered.read();
+        int second = buffered.read();
+        buffered.reset();
+        this.input = first == 0x1f && second == 0x8b
+                ? new BufferedInputStream(new GZIPInputStream(buffered, 1 << 16), 1 << 16) : buffered;
+        this.maxRecordBytes = maxRecordBytes;
+    }
+
+    /**
+     * @return следующий ответ HTTP или null, если архив закончился
+     */
+    public WarcRecord next() throws IOException {
+        String line;
+        while ((line = readLine(input)) != null) {
+            if (!line.startsWith("WARC/")) {
+                continue;
+            }
+            Map<String, String> headers = readHeaders(input);
+            long length = Long.parseLong(headers.getOrDefault("content-length", "0").trim());
+            boolean response = "response".equals(headers.get("warc-type"))
+                    && headers.getOrDefault("content-type", "").startsWith("application/http");
+            if (!response || length > maxRecordBytes) {
+                input.skipNBytes(length);
+                continue;
+            }
+            byte[] block = input.readNBytes((int) length);
+            WarcRecord record = parseHttpResponse(headers.get("warc-target-uri"), block);
+            if (record != null) {
+                return record;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public void close() throws IOException {
+        input.close();
+    }
+
+    private static WarcRecord parseHttpResponse(String targetUri, byte[] block) throws IOException {
+        InputStream http = new ByteArrayInputStream(block);
+        String statusLine = readLine(http);
+        if (targetUri == null || statusLine == null || !statusLine.startsWith("HTTP/")) {
+            return null;
+        }
+        String[] parts = statusLine.split(" ", 3);
+        int statusCode;
+        try {
+            statusCode = Integer.parseInt(parts[1]);
+        } catch (RuntimeException e) {
+            return null;
+        }
+        Map<String, String> headers = readHeaders(http);
+        InputStream body = http;
+        if ("chunked".equalsIgnoreCase(headers.getOrDefault("transfer-encoding", "").trim())) {
+            body = new ByteArrayInputStream(dechunk(http));
+        }
+        String encoding = headers.getOrDefault("content-encoding", "").trim().toLowerCase(Locale.ROOT);
+        if (encoding.equals("gzip") || encoding.equals("x-gzip")) {
+            body = new GZIPInputStream(body);
+        }
+        return new WarcRecord(targetUri.replaceAll("^<|>$", ""), statusCode, headers.get("content-type"),
+                body.readAllBytes());
+    }
+
+    private static byte[] dechunk(InputStream http) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        String sizeLine;
+        while ((sizeLine = readLine(http)) != null) {
+            int semicolon = sizeLine.indexOf(';');
+            String size = (semicolon < 0 ? sizeLine : sizeLine.substring(0, semicolon)).trim();
+            if (size.isEmpty()) {
+                continue;
+            }
+            int length = Integer.parseInt(size, 16);
+            if (length == 0) {
+                break;
+            }
+            output.write(http.readNBytes(length));
+        }
+        return output.toByteArray();
+    }
+
+    private static Map<String, String> readHeaders(InputStream stream) throws IOException {
+        Map<String, String> headers = new HashMap<>();
+        String line;
+        while ((line = readLine(stream)) != null && !line.isEmpty()) {
+            int colon = line.indexOf(':');
+            if (colon > 0) {
+                headers.put(line.substring(0, colon).trim().toLowerCase(Locale.ROOT), line.substring(colon + 1).trim());
+            }
+        }
+        return headers;
+    }
+
+    private static String readLine(InputStream stream) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream(128);
+        int b;
+        while ((b = stream.read()) != -1) {
+            if (b == '\n') {
+                break;
+            }
+            line.write(b);
+        }
+        if (b == -1 && line.size() == 0) {
+            return null;
+        }
+        String result = line.toString(StandardCharsets.UTF_8);
+        return result.endsWith("\r") ? result.substring(0, result.length() - 1) : result;
+    }
+}
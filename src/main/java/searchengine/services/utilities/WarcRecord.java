@@ -0,0 +1,13 @@
+package searchengine.services.utilities;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+@Getter
+@RequiredArgsConstructor
+public class WarcRecord {
+    private final String targetUri;
+    private final int statusCode;
+    private final String contentType;
+    private final byte[] body;
+}